@@ -0,0 +1,13 @@
+/**
+ * Outcome of adding a passenger to a security database.
+ */
+public enum AddResult {
+    /** The passenger was added */
+    INSERTED,
+    /** The same passenger, with the same name, is already in the system */
+    DUPLICATE,
+    /** The passport is already in the system under a different name */
+    CONFLICTING_NAME,
+    /** The table cannot grow any further */
+    FULL
+}
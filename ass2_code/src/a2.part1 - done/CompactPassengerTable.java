@@ -0,0 +1,408 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Compact SecurityDB engine. Passport IDs of up to ten ASCII letters and
+ * digits are packed six bits per character into a long key, so an entry is
+ * a long key, its cached hash and a long reference into a shared UTF-8 name
+ * arena, all held in parallel primitive arrays. Probing is Robin Hood
+ * linear probing, as in SecHashTable, but compares keys without touching
+ * any object.
+ *
+ * IDs that cannot be packed, and names longer than 65535 bytes, are stored
+ * in an ordinary SecHashTable. Their bucket indices are reported after the
+ * compact buckets.
+ *
+ * As in SecHashTable, each slot records the generation it was written in,
+ * and rollover() empties the table and the name arena in constant time.
+ */
+class CompactPassengerTable implements PassengerTable {
+
+    /** Longest passport ID that fits in a packed key */
+    static final int MAX_PACKED_LENGTH = 10;
+
+    /* Longest name, in UTF-8 bytes, that fits in a name reference */
+    private static final int MAX_NAME_BYTES = 0xFFFF;
+
+    private int size;
+    private final double loadFactor;
+    private int threshold;
+    private long[] keys;
+    private int[] hashes;
+    private long[] nameRefs;
+    private int[] gens;
+    private int generation = 1;
+    private int passengerCount;
+
+    /* Names of all compact entries, back to back; refs hold offset << 16 | length */
+    private byte[] arena;
+    private int arenaUsed;
+    private int arenaGarbage;
+
+    private final SecHashTable fallback;
+
+    CompactPassengerTable(int expectedPassengers, double loadFactor) {
+        SecHashTable.checkLoadFactor(loadFactor);
+        this.loadFactor = loadFactor;
+        this.size = SecHashTable.setSize(
+                (int) Math.ceil(Math.max(expectedPassengers, 1) / loadFactor));
+        this.threshold = SecHashTable.calculateThreshold(this.size, loadFactor);
+        this.keys = new long[this.size];
+        this.hashes = new int[this.size];
+        this.nameRefs = new long[this.size];
+        this.gens = new int[this.size];
+        this.arena = new byte[Math.max(expectedPassengers, 1) * 16];
+        this.fallback = new SecHashTable(1, loadFactor);
+    }
+
+    /**
+     * Packs a passport ID into a non-zero long key, mapping 0-9, A-Z and a-z
+     * to the codes 1 to 62. Returns 0 if the ID is empty, too long or uses
+     * any other character.
+     */
+    static long pack(String passportId) {
+        int length = passportId.length();
+        if (length == 0 || length > MAX_PACKED_LENGTH) {
+            return 0;
+        }
+        long key = 0;
+        for (int i = 0; i < length; i++) {
+            char c = passportId.charAt(i);
+            int code;
+            if (c >= '0' && c <= '9') {
+                code = c - '0' + 1;
+            } else if (c >= 'A' && c <= 'Z') {
+                code = c - 'A' + 11;
+            } else if (c >= 'a' && c <= 'z') {
+                code = c - 'a' + 37;
+            } else {
+                return 0;
+            }
+            key = (key << 6) | code;
+        }
+        return key;
+    }
+
+    /** Reverses pack() for a non-zero key */
+    static String unpack(long key) {
+        char[] id = new char[MAX_PACKED_LENGTH];
+        int start = id.length;
+        for (; key != 0; key >>>= 6) {
+            int code = (int) (key & 0x3F);
+            id[--start] = (char) (code <= 10 ? '0' + code - 1
+                    : code <= 36 ? 'A' + code - 11 : 'a' + code - 37);
+        }
+        return new String(id, start, id.length - start);
+    }
+
+    @Override
+    public int getSize() {
+        return this.size + this.fallback.getSize();
+    }
+
+    @Override
+    public int getPassengerCount() {
+        return this.passengerCount + this.fallback.getPassengerCount();
+    }
+
+    @Override
+    public int getIndex(String passportId, int hashCode) {
+        long key = pack(passportId);
+        int index = key == 0 ? SecHashTable.NOT_FOUND : find(key, hashCode);
+        if (index == SecHashTable.NOT_FOUND && usesFallback(key)) {
+            index = this.fallback.getIndex(passportId, hashCode);
+            return index == SecHashTable.NOT_FOUND ? index : this.size + index;
+        }
+        return index;
+    }
+
+    @Override
+    public String getName(String passportId, int hashCode) {
+        long key = pack(passportId);
+        int index = key == 0 ? SecHashTable.NOT_FOUND : find(key, hashCode);
+        if (index == SecHashTable.NOT_FOUND) {
+            return usesFallback(key) ? this.fallback.getName(passportId, hashCode) : null;
+        }
+        return nameAt(index);
+    }
+
+    @Override
+    public String getName(String passportId, int hashCode, int[] probeLength) {
+        long key = pack(passportId);
+        int index = key == 0 ? SecHashTable.NOT_FOUND : find(key, hashCode);
+        if (index == SecHashTable.NOT_FOUND) {
+            if (usesFallback(key)) {
+                return this.fallback.getName(passportId, hashCode, probeLength);
+            }
+            probeLength[0] = SecHashTable.NOT_FOUND;
+            return null;
+        }
+        probeLength[0] = probeDistance(index) + 1;
+        return nameAt(index);
+    }
+
+    /**
+     * Batched lookup in groups of SecHashTable.PROBE_GROUP keys: every key
+     * of a group is packed and the state of its home slot loaded before any
+     * is probed, so those cache misses of the group overlap. Keys stored
+     * inline compare without leaving the table's arrays.
+     */
+    @Override
+    public void getNames(String[] passportIds, int[] hashCodes, String[] names, int from, int to,
+                         PassengerTable.BatchScratch scratch) {
+        long[] packed = scratch.keys;
+        int[] homes = scratch.slots;
+        for (int start = from; start < to; start += SecHashTable.PROBE_GROUP) {
+            int end = Math.min(start + SecHashTable.PROBE_GROUP, to);
+            for (int i = start; i < end; i++) {
+                int home = SecHashTable.homeSlot(hashCodes[i], this.size);
+                packed[i - start] = pack(passportIds[i]);
+                homes[i - start] = isOccupied(home) ? home : SecHashTable.NOT_FOUND;
+            }
+            for (int i = start; i < end; i++) {
+                long key = packed[i - start];
+                int index = key == 0 || homes[i - start] == SecHashTable.NOT_FOUND
+                        ? SecHashTable.NOT_FOUND : find(key, hashCodes[i]);
+                if (index != SecHashTable.NOT_FOUND) {
+                    names[i] = nameAt(index);
+                } else {
+                    names[i] = usesFallback(key)
+                            ? this.fallback.getName(passportIds[i], hashCodes[i]) : null;
+                }
+            }
+        }
+    }
+
+    private String nameAt(int index) {
+        long ref = this.nameRefs[index];
+        return new String(this.arena, (int) (ref >>> 16), (int) (ref & MAX_NAME_BYTES),
+                StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean removePassenger(String passportId, int hashCode) {
+        long key = pack(passportId);
+        int index = key == 0 ? SecHashTable.NOT_FOUND : find(key, hashCode);
+        if (index == SecHashTable.NOT_FOUND) {
+            return usesFallback(key) && this.fallback.removePassenger(passportId, hashCode);
+        }
+        this.arenaGarbage += (int) (this.nameRefs[index] & MAX_NAME_BYTES);
+        shiftBackward(index);
+        this.passengerCount -= 1;
+        return true;
+    }
+
+    @Override
+    public AddResult addPassenger(String name, String passportId, int hashCode) {
+        long key = pack(passportId);
+        int slot = SecHashTable.homeSlot(hashCode, this.size);
+        int distance = 0;
+        if (key != 0) {
+            while (isOccupied(slot) && probeDistance(slot) >= distance) {
+                if (this.keys[slot] == key) {
+                    return nameAt(slot).equals(name)
+                            ? AddResult.DUPLICATE : AddResult.CONFLICTING_NAME;
+                }
+                slot = next(slot);
+                distance++;
+            }
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (key == 0 || nameBytes.length > MAX_NAME_BYTES) {
+            return this.fallback.addPassenger(name, passportId, hashCode);
+        }
+        if (usesFallback(key)) {
+            String existing = this.fallback.getName(passportId, hashCode);
+            if (existing != null) {
+                return existing.equals(name) ? AddResult.DUPLICATE : AddResult.CONFLICTING_NAME;
+            }
+        }
+        if (this.passengerCount + 1 > this.threshold
+                && this.size < SecHashTable.MAX_GROWABLE_SIZE) {
+            resize(SecHashTable.setSize(this.size * 2));
+            slot = SecHashTable.homeSlot(hashCode, this.size);
+            distance = 0;
+        } else if (this.passengerCount + 1 >= this.size) {
+            return AddResult.FULL;
+        }
+        insert(slot, distance, key, hashCode, appendName(nameBytes));
+        this.passengerCount += 1;
+        return AddResult.INSERTED;
+    }
+
+    @Override
+    public void rollover() {
+        if (this.generation == Integer.MAX_VALUE) {
+            Arrays.fill(this.gens, 0);
+            this.generation = 1;
+        } else {
+            this.generation++;
+        }
+        this.passengerCount = 0;
+        this.arenaUsed = 0;
+        this.arenaGarbage = 0;
+        this.fallback.rollover();
+    }
+
+    @Override
+    public void forEachPassenger(BiConsumer<? super String, ? super String> action) {
+        for (int i = 0; i < this.size; i++) {
+            if (isOccupied(i)) {
+                action.accept(unpack(this.keys[i]), nameAt(i));
+            }
+        }
+        this.fallback.forEachPassenger(action);
+    }
+
+    @Override
+    public void forEachHash(IntConsumer action) {
+        for (int i = 0; i < this.size; i++) {
+            if (isOccupied(i)) {
+                action.accept(this.hashes[i]);
+            }
+        }
+        this.fallback.forEachHash(action);
+    }
+
+    @Override
+    public void ensureCapacity(int passengers) {
+        int needed = SecHashTable.setSize((int) Math.min(Math.ceil(passengers / this.loadFactor),
+                SecHashTable.MAX_GROWABLE_SIZE));
+        if (needed > this.size) {
+            resize(needed);
+        }
+    }
+
+    /**
+     * Returns true if a passport with the given packed key may be in the
+     * fallback table: always for unpackable IDs, and for packable IDs only
+     * once some entry has been placed there because of a long name.
+     */
+    private boolean usesFallback(long key) {
+        return key == 0 || this.fallback.getPassengerCount() > 0;
+    }
+
+    private int find(long key, int hashCode) {
+        int slot = SecHashTable.homeSlot(hashCode, this.size);
+        for (int distance = 0; distance < this.size; distance++) {
+            if (!isOccupied(slot) || probeDistance(slot) < distance) {
+                return SecHashTable.NOT_FOUND;
+            } else if (this.keys[slot] == key) {
+                return slot;
+            }
+            slot = next(slot);
+        }
+        return SecHashTable.NOT_FOUND;
+    }
+
+    private void insert(int slot, int distance, long key, int hashCode, long nameRef) {
+        while (isOccupied(slot)) {
+            int residentDistance = probeDistance(slot);
+            if (residentDistance < distance) {
+                long displacedKey = this.keys[slot];
+                int displacedHash = this.hashes[slot];
+                long displacedRef = this.nameRefs[slot];
+                this.keys[slot] = key;
+                this.hashes[slot] = hashCode;
+                this.nameRefs[slot] = nameRef;
+                key = displacedKey;
+                hashCode = displacedHash;
+                nameRef = displacedRef;
+                distance = residentDistance;
+            }
+            slot = next(slot);
+            distance++;
+        }
+        this.keys[slot] = key;
+        this.hashes[slot] = hashCode;
+        this.nameRefs[slot] = nameRef;
+        this.gens[slot] = this.generation;
+    }
+
+    private void shiftBackward(int hole) {
+        int slot = next(hole);
+        while (isOccupied(slot) && probeDistance(slot) > 0) {
+            this.keys[hole] = this.keys[slot];
+            this.hashes[hole] = this.hashes[slot];
+            this.nameRefs[hole] = this.nameRefs[slot];
+            hole = slot;
+            slot = next(slot);
+        }
+        this.keys[hole] = 0;
+        this.hashes[hole] = 0;
+        this.nameRefs[hole] = 0;
+        this.gens[hole] = 0;
+    }
+
+    private void resize(int newSize) {
+        long[] oldKeys = this.keys;
+        int[] oldHashes = this.hashes;
+        long[] oldRefs = this.nameRefs;
+        int[] oldGens = this.gens;
+        this.size = newSize;
+        this.threshold = SecHashTable.calculateThreshold(this.size, this.loadFactor);
+        this.keys = new long[this.size];
+        this.hashes = new int[this.size];
+        this.nameRefs = new long[this.size];
+        this.gens = new int[this.size];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldGens[i] == this.generation) {
+                insert(SecHashTable.homeSlot(oldHashes[i], this.size), 0,
+                        oldKeys[i], oldHashes[i], oldRefs[i]);
+            }
+        }
+    }
+
+    /**
+     * Copies the name into the arena and returns its reference. When the
+     * arena is full it is compacted if at least half of it is garbage from
+     * removed passengers, and doubled otherwise.
+     */
+    private long appendName(byte[] name) {
+        if (this.arenaUsed + name.length > this.arena.length) {
+            if (this.arenaGarbage * 2 >= this.arenaUsed) {
+                compactArena(name.length);
+            } else {
+                this.arena = Arrays.copyOf(this.arena,
+                        Math.max(this.arena.length * 2, this.arenaUsed + name.length));
+            }
+        }
+        long ref = ((long) this.arenaUsed << 16) | name.length;
+        System.arraycopy(name, 0, this.arena, this.arenaUsed, name.length);
+        this.arenaUsed += name.length;
+        return ref;
+    }
+
+    private void compactArena(int extra) {
+        int live = this.arenaUsed - this.arenaGarbage;
+        byte[] compacted = new byte[Math.max(this.arena.length, (live + extra) * 2)];
+        int used = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (isOccupied(i)) {
+                long ref = this.nameRefs[i];
+                int length = (int) (ref & MAX_NAME_BYTES);
+                System.arraycopy(this.arena, (int) (ref >>> 16), compacted, used, length);
+                this.nameRefs[i] = ((long) used << 16) | length;
+                used += length;
+            }
+        }
+        this.arena = compacted;
+        this.arenaUsed = used;
+        this.arenaGarbage = 0;
+    }
+
+    private boolean isOccupied(int slot) {
+        return this.gens[slot] == this.generation;
+    }
+
+    private int probeDistance(int slot) {
+        int home = SecHashTable.homeSlot(this.hashes[slot], this.size);
+        return slot >= home ? slot - home : slot + this.size - home;
+    }
+
+    private int next(int slot) {
+        return slot + 1 == this.size ? 0 : slot + 1;
+    }
+}
@@ -0,0 +1,319 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Thread-safe security database for many screening lanes sharing one
+ * passenger list.
+ *
+ * Passengers are spread over a power-of-two number of segments by the high
+ * bits of their hash. Each segment is a linear-probing table of immutable
+ * entries guarded by its own lock, so writers on different segments never
+ * contend. Readers take no lock at all: a removed entry is replaced by a
+ * tombstone rather than shifted, so probe chains never move under a reader,
+ * and a resize builds a complete new array before publishing it through a
+ * volatile field. A reader that is still walking the old array sees the
+ * table as it was when the read began.
+ *
+ * count() and size() sum the segments and are exact only when no writer is
+ * active.
+ */
+public class ConcurrentSecurityDB extends SecurityDBBase implements PassengerSource {
+
+    private final PassportHash hashStrategy;
+    private final Segment[] segments;
+    private final int segmentBits;
+
+    /**
+     * Creates an empty database with the default options and two segments
+     * per available processor.
+     *
+     * @param numPlanes             number of planes per day
+     * @param numPassengersPerPlane number of passengers per plane
+     */
+    public ConcurrentSecurityDB(int numPlanes, int numPassengersPerPlane) {
+        this(numPlanes, numPassengersPerPlane, new SecurityDBConfig(),
+                2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an empty database with the load factor and passport hash of
+     * the given config, split into at least the given number of segments
+     * (rounded up to a power of two).
+     *
+     * @param numPlanes             number of planes per day
+     * @param numPassengersPerPlane number of passengers per plane
+     * @param config                table tuning options
+     * @param concurrencyLevel      expected number of concurrent writers
+     */
+    public ConcurrentSecurityDB(int numPlanes, int numPassengersPerPlane,
+                                SecurityDBConfig config, int concurrencyLevel) {
+        super(numPlanes, numPassengersPerPlane);
+        SecHashTable.checkLoadFactor(config.getLoadFactor());
+        this.hashStrategy = config.getHashStrategy();
+        int bits = 0;
+        while ((1 << bits) < Math.min(Math.max(concurrencyLevel, 1), 1 << 16)) {
+            bits++;
+        }
+        this.segmentBits = bits;
+        this.segments = new Segment[1 << bits];
+        int perSegment = Math.max(numPlanes * numPassengersPerPlane >> bits, 1);
+        for (int i = 0; i < this.segments.length; i++) {
+            this.segments[i] = new Segment(perSegment, config.getLoadFactor());
+        }
+    }
+
+    @Override
+    public int calculateHashCode(String key) {
+        return this.hashStrategy.hash(key);
+    }
+
+    @Override
+    public int size() {
+        int total = 0;
+        for (Segment segment : this.segments) {
+            total += segment.slots.length();
+        }
+        return total;
+    }
+
+    @Override
+    public String get(String passportId) {
+        int hashCode = calculateHashCode(passportId);
+        return segmentFor(hashCode).get(passportId, hashCode);
+    }
+
+    @Override
+    public boolean remove(String passportId) {
+        int hashCode = calculateHashCode(passportId);
+        return segmentFor(hashCode).remove(passportId, hashCode);
+    }
+
+    @Override
+    public boolean addPassenger(String name, String passportId) {
+        int hashCode = calculateHashCode(passportId);
+        return segmentFor(hashCode).add(name, passportId, hashCode);
+    }
+
+    @Override
+    public int count() {
+        int total = 0;
+        for (Segment segment : this.segments) {
+            total += segment.count;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the bucket index of the passenger, numbering the buckets of
+     * all segments consecutively. Indices change when a segment resizes.
+     *
+     * @param passportId passenger's passport ID
+     * @return bucket index of passenger in hashtable
+     */
+    @Override
+    public int getIndex(String passportId) {
+        int hashCode = calculateHashCode(passportId);
+        int segment = segmentIndex(hashCode);
+        int index = this.segments[segment].indexOf(passportId, hashCode);
+        if (index == SecHashTable.NOT_FOUND) {
+            return index;
+        }
+        for (int i = 0; i < segment; i++) {
+            index += this.segments[i].slots.length();
+        }
+        return index;
+    }
+
+    /**
+     * Passes every passenger to the action, segment by segment. Like a
+     * lookup it takes no lock, so a passenger added or removed during the
+     * walk may or may not be passed.
+     *
+     * @param action receives each passport ID and the name on record
+     */
+    @Override
+    public void forEachPassenger(BiConsumer<? super String, ? super String> action) {
+        for (Segment segment : this.segments) {
+            AtomicReferenceArray<Entry> table = segment.slots;
+            for (int i = 0; i < table.length(); i++) {
+                Entry entry = table.get(i);
+                if (entry != null && entry != TOMBSTONE) {
+                    action.accept(entry.passportId, entry.name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of segments the table is split into.
+     *
+     * @return number of independently locked segments
+     */
+    public int getSegmentCount() {
+        return this.segments.length;
+    }
+
+    private Segment segmentFor(int hashCode) {
+        return this.segments[segmentIndex(hashCode)];
+    }
+
+    /* Fibonacci hashing of the high bits, independent of the slot bits */
+    private int segmentIndex(int hashCode) {
+        return this.segmentBits == 0 ? 0 : (hashCode * 0x9E3779B9) >>> (32 - this.segmentBits);
+    }
+
+    /**
+     * Immutable table entry. Readers may hold on to one after it has been
+     * removed from the table.
+     */
+    private static final class Entry {
+        final String passportId;
+        final String name;
+        final int hashCode;
+
+        Entry(String passportId, String name, int hashCode) {
+            this.passportId = passportId;
+            this.name = name;
+            this.hashCode = hashCode;
+        }
+    }
+
+    /* Marks a removed entry; probe chains continue past it */
+    private static final Entry TOMBSTONE = new Entry(null, null, 0);
+
+    /**
+     * One independently locked linear-probing table. Every mutation holds
+     * the lock; lookups read the volatile slot array without it.
+     */
+    private static final class Segment extends ReentrantLock {
+
+        private static final long serialVersionUID = 1L;
+
+        private final double loadFactor;
+        volatile AtomicReferenceArray<Entry> slots;
+        volatile int count;
+        /* Live entries plus tombstones; only touched under the lock */
+        private int used;
+        private int threshold;
+
+        Segment(int expectedPassengers, double loadFactor) {
+            this.loadFactor = loadFactor;
+            int size = SecHashTable.setSize((int) Math.ceil(expectedPassengers / loadFactor));
+            this.slots = new AtomicReferenceArray<>(size);
+            this.threshold = SecHashTable.calculateThreshold(size, loadFactor);
+        }
+
+        /*
+         * Reads the matching entry in the same load that finds it, since the
+         * slot may be reused by another passenger right after.
+         */
+        String get(String passportId, int hashCode) {
+            AtomicReferenceArray<Entry> table = this.slots;
+            int size = table.length();
+            int slot = SecHashTable.homeSlot(hashCode, size);
+            for (int i = 0; i < size; i++) {
+                Entry entry = table.get(slot);
+                if (entry == null) {
+                    return null;
+                } else if (entry != TOMBSTONE && entry.hashCode == hashCode
+                        && entry.passportId.equals(passportId)) {
+                    return entry.name;
+                }
+                slot = slot + 1 == size ? 0 : slot + 1;
+            }
+            return null;
+        }
+
+        int indexOf(String passportId, int hashCode) {
+            return find(this.slots, passportId, hashCode);
+        }
+
+        boolean add(String name, String passportId, int hashCode) {
+            lock();
+            try {
+                if (find(this.slots, passportId, hashCode) != SecHashTable.NOT_FOUND) {
+                    return false;
+                }
+                if (this.used + 1 > this.threshold) {
+                    rehash();
+                }
+                AtomicReferenceArray<Entry> table = this.slots;
+                int size = table.length();
+                int slot = SecHashTable.homeSlot(hashCode, size);
+                Entry resident = table.get(slot);
+                while (resident != null && resident != TOMBSTONE) {
+                    slot = slot + 1 == size ? 0 : slot + 1;
+                    resident = table.get(slot);
+                }
+                if (resident == null) {
+                    this.used++;
+                }
+                table.set(slot, new Entry(passportId, name, hashCode));
+                this.count = this.count + 1;
+                return true;
+            } finally {
+                unlock();
+            }
+        }
+
+        boolean remove(String passportId, int hashCode) {
+            lock();
+            try {
+                int index = find(this.slots, passportId, hashCode);
+                if (index == SecHashTable.NOT_FOUND) {
+                    return false;
+                }
+                this.slots.set(index, TOMBSTONE);
+                this.count = this.count - 1;
+                return true;
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * Copies the live entries into a fresh array, doubling it when more
+         * than half the threshold is live and otherwise only dropping the
+         * tombstones, then publishes the new array.
+         */
+        private void rehash() {
+            AtomicReferenceArray<Entry> old = this.slots;
+            int size = old.length();
+            if (this.count + 1 > this.threshold / 2) {
+                size = SecHashTable.setSize(size * 2);
+            }
+            AtomicReferenceArray<Entry> table = new AtomicReferenceArray<>(size);
+            for (int i = 0; i < old.length(); i++) {
+                Entry entry = old.get(i);
+                if (entry != null && entry != TOMBSTONE) {
+                    int slot = SecHashTable.homeSlot(entry.hashCode, size);
+                    while (table.get(slot) != null) {
+                        slot = slot + 1 == size ? 0 : slot + 1;
+                    }
+                    table.set(slot, entry);
+                }
+            }
+            this.used = this.count;
+            this.threshold = SecHashTable.calculateThreshold(size, this.loadFactor);
+            this.slots = table;
+        }
+
+        private static int find(AtomicReferenceArray<Entry> table, String passportId,
+                                int hashCode) {
+            int size = table.length();
+            int slot = SecHashTable.homeSlot(hashCode, size);
+            for (int i = 0; i < size; i++) {
+                Entry entry = table.get(slot);
+                if (entry == null) {
+                    return SecHashTable.NOT_FOUND;
+                } else if (entry != TOMBSTONE && entry.hashCode == hashCode
+                        && entry.passportId.equals(passportId)) {
+                    return slot;
+                }
+                slot = slot + 1 == size ? 0 : slot + 1;
+            }
+            return SecHashTable.NOT_FOUND;
+        }
+    }
+}
@@ -0,0 +1,470 @@
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Bucketized cuckoo hashing engine for SecurityDB, bounding the work of
+ * every lookup where SecHashTable's probe chains are only short on average.
+ *
+ * Slots are grouped into buckets of four. Each passenger may live in one of
+ * two buckets, both derived from its passport hash. Every slot has a tag,
+ * a long holding the generation the slot was written in above the cached
+ * hash, so one comparison per slot tells whether it holds the key's hash
+ * in the current generation. A bucket's tags are one 32-byte run, which
+ * lies in a single cache line unless the array happens to place it across
+ * a line boundary.
+ *
+ * A miss therefore reads the tags of two buckets, plus the eight stash
+ * tags while the stash is non-empty, and the fallback table while that is.
+ * A hit reads the tags of one or two buckets, then, like SecHashTable, the
+ * slot's entry reference, the Passenger and its passport ID to confirm the
+ * match. An insert that finds both buckets
+ * full evicts a resident to its other bucket, and so on along a kick chain;
+ * if the chain gets too long the homeless entry goes to a small stash that
+ * lookups scan only while it is non-empty. When the stash is full too, the
+ * table is rehashed into twice as many buckets.
+ *
+ * Passports whose hashes collide outright share both buckets, and growing
+ * cannot separate them. An entry that cannot be placed while the table is
+ * less than half full is therefore moved to an ordinary SecHashTable, whose
+ * bucket indices are reported after the cuckoo slots and the stash.
+ */
+class CuckooPassengerTable implements PassengerTable {
+
+    static final int BUCKET_SLOTS = 4;
+    static final int STASH_SLOTS = 8;
+
+    /* Evictions tried before an insert gives up and uses the stash */
+    private static final int MAX_KICKS = 256;
+    private static final int MAX_BUCKETS = 1 << 28;
+
+    private final double loadFactor;
+    private int buckets;
+    private int slots;
+    private int threshold;
+    /* Bucket slots first, then the stash, in both arrays */
+    private Passenger[] entries;
+    /* Per slot: the generation it was written in, shifted up 32 bits, and the cached hash */
+    private long[] tags;
+    private int generation;
+    private int passengerCount;
+    private int stashCount;
+    /* xorshift state choosing eviction victims */
+    private int kickState = 0x9E3779B9;
+    /* Hash of the entry place() failed to find a slot for */
+    private int homelessHash;
+
+    private final SecHashTable fallback;
+
+    CuckooPassengerTable(int expectedPassengers, double loadFactor) {
+        SecHashTable.checkLoadFactor(loadFactor);
+        this.loadFactor = loadFactor;
+        allocate(bucketsFor(expectedPassengers));
+        this.fallback = new SecHashTable(1, loadFactor);
+    }
+
+    @Override
+    public int getSize() {
+        return this.slots + STASH_SLOTS + this.fallback.getSize();
+    }
+
+    @Override
+    public int getPassengerCount() {
+        return this.passengerCount + this.fallback.getPassengerCount();
+    }
+
+    @Override
+    public int getIndex(String passportId, int hashCode) {
+        int index = find(passportId, hashCode);
+        if (index == SecHashTable.NOT_FOUND && this.fallback.getPassengerCount() > 0) {
+            index = this.fallback.getIndex(passportId, hashCode);
+            return index == SecHashTable.NOT_FOUND ? index : this.slots + STASH_SLOTS + index;
+        }
+        return index;
+    }
+
+    @Override
+    public String getName(String passportId, int hashCode) {
+        int index = find(passportId, hashCode);
+        if (index == SecHashTable.NOT_FOUND) {
+            return this.fallback.getPassengerCount() > 0
+                    ? this.fallback.getName(passportId, hashCode) : null;
+        }
+        return this.entries[index].getName();
+    }
+
+    /**
+     * Counts the slots find() compares as the probe length: the first
+     * bucket, then the second, then the whole stash, then the fallback's
+     * probe.
+     */
+    @Override
+    public String getName(String passportId, int hashCode, int[] probeLength) {
+        int index = find(passportId, hashCode);
+        if (index == SecHashTable.NOT_FOUND) {
+            String name = null;
+            probeLength[0] = SecHashTable.NOT_FOUND;
+            if (this.fallback.getPassengerCount() > 0) {
+                name = this.fallback.getName(passportId, hashCode, probeLength);
+                if (name != null) {
+                    probeLength[0] += 2 * BUCKET_SLOTS + (this.stashCount > 0 ? STASH_SLOTS : 0);
+                }
+            }
+            return name;
+        } else if (index >= this.slots) {
+            probeLength[0] = 2 * BUCKET_SLOTS + index - this.slots + 1;
+        } else {
+            int offset = index % BUCKET_SLOTS + 1;
+            probeLength[0] = index / BUCKET_SLOTS == bucket1(mix(hashCode))
+                    ? offset : BUCKET_SLOTS + offset;
+        }
+        return this.entries[index].getName();
+    }
+
+    /**
+     * Batched lookup in groups of SecHashTable.PROBE_GROUP keys. The tags of
+     * every key's first bucket in a group are compared before any entry is
+     * followed, so the group's bucket misses overlap. Keys not confirmed in
+     * their first bucket then go through the full lookup.
+     */
+    @Override
+    public void getNames(String[] passportIds, int[] hashCodes, String[] names, int from, int to,
+                         PassengerTable.BatchScratch scratch) {
+        int[] firstHits = scratch.slots;
+        for (int start = from; start < to; start += SecHashTable.PROBE_GROUP) {
+            int end = Math.min(start + SecHashTable.PROBE_GROUP, to);
+            for (int i = start; i < end; i++) {
+                firstHits[i - start] = scanTags(bucket1(mix(hashCodes[i])), tag(hashCodes[i]));
+            }
+            for (int i = start; i < end; i++) {
+                int index = firstHits[i - start];
+                names[i] = index != SecHashTable.NOT_FOUND
+                        && this.entries[index].getPassportID().equals(passportIds[i])
+                        ? this.entries[index].getName() : getName(passportIds[i], hashCodes[i]);
+            }
+        }
+    }
+
+    @Override
+    public boolean removePassenger(String passportId, int hashCode) {
+        int index = find(passportId, hashCode);
+        if (index == SecHashTable.NOT_FOUND) {
+            return this.fallback.getPassengerCount() > 0
+                    && this.fallback.removePassenger(passportId, hashCode);
+        }
+        this.entries[index] = null;
+        this.tags[index] = 0;
+        this.passengerCount -= 1;
+        if (index >= this.slots) {
+            this.stashCount -= 1;
+        } else if (this.stashCount > 0) {
+            unstashInto(index);
+        }
+        return true;
+    }
+
+    @Override
+    public AddResult addPassenger(String name, String passportId, int hashCode) {
+        int index = find(passportId, hashCode);
+        if (index != SecHashTable.NOT_FOUND) {
+            return this.entries[index].getName().equals(name)
+                    ? AddResult.DUPLICATE : AddResult.CONFLICTING_NAME;
+        }
+        if (this.fallback.getPassengerCount() > 0) {
+            String existing = this.fallback.getName(passportId, hashCode);
+            if (existing != null) {
+                return existing.equals(name) ? AddResult.DUPLICATE : AddResult.CONFLICTING_NAME;
+            }
+        }
+        if (this.passengerCount + 1 > this.threshold) {
+            if (this.buckets < MAX_BUCKETS) {
+                resize(this.buckets * 2);
+            } else if (this.passengerCount + 1 > this.slots) {
+                return AddResult.FULL;
+            }
+        }
+        this.passengerCount += 1;
+        Passenger homeless = place(new Passenger(name, passportId), hashCode);
+        while (homeless != null) {
+            int homelessHash = this.homelessHash;
+            if (this.passengerCount * 2 >= this.slots && this.buckets < MAX_BUCKETS) {
+                resize(this.buckets * 2);
+                homeless = place(homeless, homelessHash);
+            } else {
+                evictToFallback(homeless, homelessHash);
+                homeless = null;
+            }
+        }
+        return AddResult.INSERTED;
+    }
+
+    @Override
+    public void ensureCapacity(int passengers) {
+        int needed = bucketsFor(passengers);
+        if (needed > this.buckets) {
+            resize(needed);
+        }
+    }
+
+    @Override
+    public void rollover() {
+        if (this.generation == Integer.MAX_VALUE) {
+            Arrays.fill(this.entries, null);
+            Arrays.fill(this.tags, 0);
+            this.generation = 1;
+        } else {
+            this.generation++;
+        }
+        this.passengerCount = 0;
+        this.stashCount = 0;
+        this.fallback.rollover();
+    }
+
+    @Override
+    public void forEachPassenger(BiConsumer<? super String, ? super String> action) {
+        for (int i = 0; i < this.entries.length; i++) {
+            if (isOccupied(i)) {
+                action.accept(this.entries[i].getPassportID(), this.entries[i].getName());
+            }
+        }
+        this.fallback.forEachPassenger(action);
+    }
+
+    @Override
+    public void forEachHash(IntConsumer action) {
+        for (int i = 0; i < this.entries.length; i++) {
+            if (isOccupied(i)) {
+                action.accept(hashAt(i));
+            }
+        }
+        this.fallback.forEachHash(action);
+    }
+
+    private int find(String passportId, int hashCode) {
+        long mixed = mix(hashCode);
+        long tag = tag(hashCode);
+        int first = bucket1(mixed);
+        int index = scanBucket(first, passportId, tag);
+        if (index == SecHashTable.NOT_FOUND) {
+            index = scanBucket(bucket2(mixed, first), passportId, tag);
+        }
+        if (index == SecHashTable.NOT_FOUND && this.stashCount > 0) {
+            for (int i = this.slots; i < this.entries.length; i++) {
+                if (matches(i, passportId, tag)) {
+                    return i;
+                }
+            }
+        }
+        return index;
+    }
+
+    private int scanBucket(int bucket, String passportId, long tag) {
+        int base = bucket * BUCKET_SLOTS;
+        for (int i = base; i < base + BUCKET_SLOTS; i++) {
+            if (matches(i, passportId, tag)) {
+                return i;
+            }
+        }
+        return SecHashTable.NOT_FOUND;
+    }
+
+    /* First slot of the bucket whose tag matches, without looking at any entry */
+    private int scanTags(int bucket, long tag) {
+        int base = bucket * BUCKET_SLOTS;
+        for (int i = base; i < base + BUCKET_SLOTS; i++) {
+            if (this.tags[i] == tag) {
+                return i;
+            }
+        }
+        return SecHashTable.NOT_FOUND;
+    }
+
+    private boolean matches(int index, String passportId, long tag) {
+        return this.tags[index] == tag && this.entries[index].getPassportID().equals(passportId);
+    }
+
+    /**
+     * Places an entry known to be absent, evicting residents along a kick
+     * chain of at most MAX_KICKS steps and stashing the last one if the
+     * chain runs out. Returns null on success; otherwise returns the entry
+     * left without a slot, whose hash is then in homelessHash.
+     */
+    private Passenger place(Passenger passenger, int hashCode) {
+        long mixed = mix(hashCode);
+        int first = bucket1(mixed);
+        int second = bucket2(mixed, first);
+        if (putInBucket(first, passenger, hashCode) || putInBucket(second, passenger, hashCode)) {
+            return null;
+        }
+        int bucket = (nextRandom() & 1) == 0 ? first : second;
+        for (int kick = 0; kick < MAX_KICKS; kick++) {
+            int slot = bucket * BUCKET_SLOTS + (nextRandom() & (BUCKET_SLOTS - 1));
+            Passenger victim = this.entries[slot];
+            int victimHash = hashAt(slot);
+            write(slot, passenger, hashCode);
+            passenger = victim;
+            hashCode = victimHash;
+            long victimMixed = mix(hashCode);
+            int victimFirst = bucket1(victimMixed);
+            int victimSecond = bucket2(victimMixed, victimFirst);
+            bucket = bucket == victimFirst ? victimSecond : victimFirst;
+            if (putInBucket(bucket, passenger, hashCode)) {
+                return null;
+            }
+        }
+        for (int i = this.slots; i < this.entries.length; i++) {
+            if (!isOccupied(i)) {
+                write(i, passenger, hashCode);
+                this.stashCount += 1;
+                return null;
+            }
+        }
+        this.homelessHash = hashCode;
+        return passenger;
+    }
+
+    private boolean putInBucket(int bucket, Passenger passenger, int hashCode) {
+        int base = bucket * BUCKET_SLOTS;
+        for (int i = base; i < base + BUCKET_SLOTS; i++) {
+            if (!isOccupied(i)) {
+                write(i, passenger, hashCode);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* Moves a stashed entry that may live in the bucket of a freed slot into it */
+    private void unstashInto(int freedSlot) {
+        int bucket = freedSlot / BUCKET_SLOTS;
+        for (int i = this.slots; i < this.entries.length; i++) {
+            if (isOccupied(i)) {
+                long mixed = mix(hashAt(i));
+                int first = bucket1(mixed);
+                if (first == bucket || bucket2(mixed, first) == bucket) {
+                    write(freedSlot, this.entries[i], hashAt(i));
+                    this.entries[i] = null;
+                    this.tags[i] = 0;
+                    this.stashCount -= 1;
+                    return;
+                }
+            }
+        }
+    }
+
+    private void evictToFallback(Passenger passenger, int hashCode) {
+        this.fallback.addPassenger(passenger.getName(), passenger.getPassportID(), hashCode);
+        this.passengerCount -= 1;
+    }
+
+    /**
+     * Rehashes every entry into the given number of buckets, doubling again
+     * if the stash overflows while the new table is still at least half
+     * full. Entries moved to the fallback are cleared from the old arrays so
+     * that a restarted attempt does not place them twice.
+     */
+    private void resize(int newBuckets) {
+        Passenger[] oldEntries = this.entries;
+        long[] oldTags = this.tags;
+        int oldGeneration = this.generation;
+        boolean placedAll = false;
+        while (!placedAll) {
+            allocate(newBuckets);
+            placedAll = true;
+            for (int i = 0; i < oldEntries.length && placedAll; i++) {
+                if ((int) (oldTags[i] >>> 32) == oldGeneration) {
+                    Passenger homeless = place(oldEntries[i], (int) oldTags[i]);
+                    if (homeless == null) {
+                        continue;
+                    } else if (this.passengerCount * 2 >= this.slots && newBuckets < MAX_BUCKETS) {
+                        newBuckets *= 2;
+                        placedAll = false;
+                    } else {
+                        evictToFallback(homeless, this.homelessHash);
+                        clearOld(oldEntries, oldTags, homeless);
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Marks the old copy of an entry as gone. The homeless entry may be one
+     * placed earlier in this attempt and kicked out since, so it is looked
+     * up by identity.
+     */
+    private static void clearOld(Passenger[] oldEntries, long[] oldTags, Passenger passenger) {
+        for (int i = 0; i < oldEntries.length; i++) {
+            if (oldEntries[i] == passenger) {
+                oldTags[i] = 0;
+                return;
+            }
+        }
+    }
+
+    private void allocate(int newBuckets) {
+        this.buckets = newBuckets;
+        this.slots = newBuckets * BUCKET_SLOTS;
+        this.threshold = SecHashTable.calculateThreshold(this.slots, this.loadFactor);
+        this.entries = new Passenger[this.slots + STASH_SLOTS];
+        this.tags = new long[this.slots + STASH_SLOTS];
+        this.generation = 1;
+        this.stashCount = 0;
+    }
+
+    private int bucketsFor(int passengers) {
+        double needed = Math.ceil(Math.max(passengers, 1) / this.loadFactor / BUCKET_SLOTS);
+        int result = 2;
+        while (result < needed && result < MAX_BUCKETS) {
+            result <<= 1;
+        }
+        return result;
+    }
+
+    private void write(int index, Passenger passenger, int hashCode) {
+        this.entries[index] = passenger;
+        this.tags[index] = tag(hashCode);
+    }
+
+    /* Tag of a slot holding this hash in the current generation */
+    private long tag(int hashCode) {
+        return (long) this.generation << 32 | (hashCode & 0xFFFFFFFFL);
+    }
+
+    private int hashAt(int index) {
+        return (int) this.tags[index];
+    }
+
+    private boolean isOccupied(int index) {
+        return (int) (this.tags[index] >>> 32) == this.generation;
+    }
+
+    private int bucket1(long mixed) {
+        return (int) mixed & (this.buckets - 1);
+    }
+
+    /* Second bucket from the other half of the mixed hash, never equal to the first */
+    private int bucket2(long mixed, int first) {
+        int second = (int) (mixed >>> 32) & (this.buckets - 1);
+        return second == first ? first ^ 1 : second;
+    }
+
+    private int nextRandom() {
+        int x = this.kickState;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        this.kickState = x;
+        return x;
+    }
+
+    /* MurmurHash3's 64-bit finalizer */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,219 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Security database whose adds and removes are recorded in a
+ * SecurityDBJournal, so that they survive a restart between snapshots.
+ *
+ * Opening replays the journal on top of the database it wraps, which holds
+ * the latest snapshot. Each mutation that will succeed is appended to the
+ * journal before it is applied to that database, so a mutation the journal
+ * refuses never reaches memory. The journal flushes them with group commit
+ * as configured in SecurityDBConfig, outside the lock that orders the
+ * mutations, so a flush does not hold up other writers.
+ * checkpoint() writes a new snapshot and empties the journal. Replaying a
+ * journal over a snapshot that already holds its mutations gives the same
+ * state, so a crash between those two steps is harmless.
+ *
+ * A snapshot records the passengers and the plane dimensions only. open()
+ * loads it into a SecurityDB built from the config, so every database
+ * option, from the listener and optimistic reads to the Bloom filter, name
+ * index, statistics and hash, applies the same before and after a restart.
+ *
+ * Mutations are serialized so the journal order matches the order they
+ * were applied in; lookups are as thread-safe as the wrapped database.
+ * Journal write failures are thrown as UncheckedIOException. A failed
+ * flush is reported to the next mutation, which is then refused.
+ *
+ * An add is logged whenever the passport is new, so one refused because
+ * the table is full is logged too; replay reaches the same state before
+ * that record and refuses it the same way.
+ */
+public class JournaledSecurityDB extends SecurityDBBase implements AutoCloseable {
+
+    private final SecurityDBBase db;
+    /* The same database, as checkpoint() writes it */
+    private final PassengerSource snapshotSource;
+    private final SecurityDBJournal journal;
+
+    /**
+     * Wraps the database, replaying the journal into it first.
+     *
+     * @param db          database holding the state the journal starts from
+     * @param journalFile journal file, created if absent
+     * @param config      journal flush interval and batch size
+     * @param <D>         any database that can list its passengers
+     * @throws IOException if the journal cannot be read or opened
+     */
+    public <D extends SecurityDBBase & PassengerSource> JournaledSecurityDB(
+            D db, Path journalFile, SecurityDBConfig config) throws IOException {
+        super(db.getNumPlanes(), db.getNumPassengersPerPlane());
+        this.db = db;
+        this.snapshotSource = db;
+        this.journal = SecurityDBJournal.open(journalFile, db, config);
+    }
+
+    /**
+     * Restores a database from the latest snapshot, if the file exists, and
+     * the journal written since. The database is a SecurityDB built from
+     * the config either way; a snapshot only supplies its passengers and
+     * plane dimensions.
+     *
+     * @param snapshotFile          snapshot written by checkpoint(), possibly absent
+     * @param journalFile           journal file, created if absent
+     * @param numPlanes             number of planes per day, if there is no snapshot
+     * @param numPassengersPerPlane number of passengers per plane, if there is no snapshot
+     * @param config                database and journal options
+     * @return restored database
+     * @throws IOException if either file cannot be read
+     */
+    public static JournaledSecurityDB open(Path snapshotFile, Path journalFile, int numPlanes,
+                                           int numPassengersPerPlane, SecurityDBConfig config)
+            throws IOException {
+        SecurityDB db;
+        if (Files.exists(snapshotFile)) {
+            try (MappedSecurityDB snapshot = MappedSecurityDB.open(snapshotFile)) {
+                db = new SecurityDB(snapshot.getNumPlanes(), snapshot.getNumPassengersPerPlane(),
+                        config);
+                List<String> names = new ArrayList<>(snapshot.count());
+                List<String> passportIds = new ArrayList<>(snapshot.count());
+                snapshot.forEachPassenger((passportId, name) -> {
+                    passportIds.add(passportId);
+                    names.add(name);
+                });
+                db.loadManifest(names.toArray(new String[0]), passportIds.toArray(new String[0]));
+            }
+        } else {
+            db = new SecurityDB(numPlanes, numPassengersPerPlane, config);
+        }
+        return new JournaledSecurityDB(db, journalFile, config);
+    }
+
+    @Override
+    public int calculateHashCode(String key) {
+        return this.db.calculateHashCode(key);
+    }
+
+    @Override
+    public int size() {
+        return this.db.size();
+    }
+
+    @Override
+    public String get(String passportId) {
+        return this.db.get(passportId);
+    }
+
+    @Override
+    public boolean remove(String passportId) {
+        synchronized (this) {
+            if (this.db.get(passportId) == null) {
+                return false;
+            }
+            try {
+                this.journal.appendRemove(passportId);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.db.remove(passportId);
+        }
+        flushIfFull();
+        return true;
+    }
+
+    @Override
+    public boolean addPassenger(String name, String passportId) {
+        boolean added;
+        synchronized (this) {
+            if (this.db.get(passportId) != null) {
+                // a duplicate or conflicting add changes nothing, so it is not logged
+                return this.db.addPassenger(name, passportId);
+            }
+            try {
+                this.journal.appendAdd(name, passportId);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            added = this.db.addPassenger(name, passportId);
+        }
+        flushIfFull();
+        return added;
+    }
+
+    @Override
+    public int count() {
+        return this.db.count();
+    }
+
+    @Override
+    public int getIndex(String passportId) {
+        return this.db.getIndex(passportId);
+    }
+
+    private void flushIfFull() {
+        try {
+            this.journal.flushIfFull();
+        } catch (IOException e) {
+            // kept by the journal and reported to the next mutation
+        }
+    }
+
+    /**
+     * Returns the number of journal records replayed when this database was
+     * opened.
+     *
+     * @return replayed records
+     */
+    public int getReplayedCount() {
+        return this.journal.getReplayedCount();
+    }
+
+    /**
+     * Blocks until every mutation made so far is on disk.
+     *
+     * @throws IOException if the journal cannot be flushed
+     */
+    public void sync() throws IOException {
+        this.journal.sync();
+    }
+
+    /**
+     * Writes a snapshot of the current state and empties the journal. The
+     * snapshot replaces the file by renaming, so it may be the file a
+     * wrapped MappedSecurityDB maps wherever the platform allows that.
+     *
+     * @param snapshotFile snapshot file, replaced if it exists
+     * @throws IOException if the snapshot or journal cannot be written
+     */
+    public synchronized void checkpoint(Path snapshotFile) throws IOException {
+        SecurityDBSnapshot.write(this.snapshotSource, snapshotFile);
+        this.journal.truncate();
+    }
+
+    /**
+     * Flushes and closes the journal, then closes the wrapped database if it
+     * holds resources.
+     *
+     * @throws IOException if the final flush fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.journal.close();
+        } finally {
+            if (this.db instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) this.db).close();
+                } catch (IOException | RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Aggregate outcome of loading a passenger manifest into a security
+ * database: how many passengers ended up in each AddResult, and which
+ * passports were rejected.
+ */
+public class ManifestLoadResult {
+
+    private final int[] counts = new int[AddResult.values().length];
+    private final List<String> duplicatePassports = new ArrayList<>();
+    private final List<String> conflictingPassports = new ArrayList<>();
+    private final List<String> rejectedWhenFull = new ArrayList<>();
+
+    /**
+     * Records the outcome of adding one passenger.
+     *
+     * @param result     outcome of the add
+     * @param passportId passport ID that was added
+     */
+    void record(AddResult result, String passportId) {
+        this.counts[result.ordinal()]++;
+        switch (result) {
+            case DUPLICATE:
+                this.duplicatePassports.add(passportId);
+                break;
+            case CONFLICTING_NAME:
+                this.conflictingPassports.add(passportId);
+                break;
+            case FULL:
+                this.rejectedWhenFull.add(passportId);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Returns the number of passengers with the given outcome.
+     *
+     * @param result outcome to count
+     * @return number of passengers with that outcome
+     */
+    public int getCount(AddResult result) {
+        return this.counts[result.ordinal()];
+    }
+
+    /**
+     * Returns the number of passengers added.
+     *
+     * @return number of INSERTED outcomes
+     */
+    public int getInserted() {
+        return getCount(AddResult.INSERTED);
+    }
+
+    /**
+     * Returns the number of passengers presented in the manifest.
+     *
+     * @return number of outcomes recorded
+     */
+    public int getTotal() {
+        int total = 0;
+        for (int count : this.counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the passports that were already on record under the same name.
+     *
+     * @return duplicate passport IDs, in manifest order
+     */
+    public List<String> getDuplicatePassports() {
+        return Collections.unmodifiableList(this.duplicatePassports);
+    }
+
+    /**
+     * Returns the passports that were already on record under another name.
+     * Each of them was also reported to the suspicious-passenger listener.
+     *
+     * @return conflicting passport IDs, in manifest order
+     */
+    public List<String> getConflictingPassports() {
+        return Collections.unmodifiableList(this.conflictingPassports);
+    }
+
+    /**
+     * Returns the passports rejected because the table could not grow.
+     *
+     * @return passport IDs rejected as FULL, in manifest order
+     */
+    public List<String> getRejectedWhenFull() {
+        return Collections.unmodifiableList(this.rejectedWhenFull);
+    }
+
+    @Override
+    public String toString() {
+        return "ManifestLoadResult{inserted=" + getInserted()
+                + ", duplicate=" + getCount(AddResult.DUPLICATE)
+                + ", conflicting=" + getCount(AddResult.CONFLICTING_NAME)
+                + ", full=" + getCount(AddResult.FULL) + "}";
+    }
+}
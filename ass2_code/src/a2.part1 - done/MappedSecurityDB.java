@@ -0,0 +1,248 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Security database served from a memory-mapped snapshot written by
+ * SecurityDBSnapshot. Opening maps the file and checks its header, so a
+ * restarted process can answer lookups almost at once whatever the number
+ * of passengers; pages are faulted in by the operating system as lookups
+ * touch them, and no Passenger objects are built.
+ *
+ * The snapshot itself is never modified. Passengers added after opening go
+ * to a small on-heap table that is searched first, and passengers removed
+ * from the snapshot are remembered in a set of passport IDs. Write a new
+ * snapshot to fold these changes back into a file.
+ *
+ * The database must be closed when no longer needed; close() unmaps the
+ * file where the JVM allows it, and every later call throws
+ * IllegalStateException. Instances are not thread-safe.
+ */
+public class MappedSecurityDB extends SecurityDBBase implements PassengerSource, AutoCloseable {
+
+    private MappedByteBuffer map;
+    private final int size;
+    private final int snapshotCount;
+    private final int recordsStart;
+
+    private final SecHashTable added;
+    private final Set<String> removed = new HashSet<>();
+
+    private boolean closed;
+
+    private MappedSecurityDB(int numPlanes, int numPassengersPerPlane, MappedByteBuffer map,
+                             int size, int snapshotCount) {
+        super(numPlanes, numPassengersPerPlane);
+        this.map = map;
+        this.size = size;
+        this.snapshotCount = snapshotCount;
+        this.recordsStart = SecurityDBSnapshot.HEADER_BYTES + size * SecurityDBSnapshot.SLOT_BYTES;
+        this.added = new SecHashTable(16, SecHashTable.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Maps a snapshot file and serves it.
+     *
+     * @param file snapshot written by SecurityDBSnapshot
+     * @return database backed by the file
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static MappedSecurityDB open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < SecurityDBSnapshot.HEADER_BYTES || length > Integer.MAX_VALUE) {
+                throw new IOException("Not a SecurityDB snapshot: " + file);
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            map.order(SecurityDBSnapshot.ORDER);
+            int size = map.getInt(16);
+            if (map.getInt(0) != SecurityDBSnapshot.MAGIC) {
+                throw new IOException("Not a SecurityDB snapshot: " + file);
+            } else if (map.getInt(4) != SecurityDBSnapshot.VERSION) {
+                throw new IOException("Unsupported snapshot version " + map.getInt(4) + ": " + file);
+            } else if (size <= 0 || SecurityDBSnapshot.HEADER_BYTES
+                    + (long) size * SecurityDBSnapshot.SLOT_BYTES + map.getInt(24) != length) {
+                throw new IOException("Truncated or corrupt snapshot: " + file);
+            }
+            return new MappedSecurityDB(map.getInt(8), map.getInt(12), map, size, map.getInt(20));
+        }
+    }
+
+    @Override
+    public int calculateHashCode(String key) {
+        return SecurityDBSnapshot.HASH.hash(key);
+    }
+
+    /**
+     * Returns the number of buckets: the snapshot's slots followed by those
+     * of the table of passengers added since opening.
+     */
+    @Override
+    public int size() {
+        checkOpen();
+        return this.size + this.added.getSize();
+    }
+
+    @Override
+    public String get(String passportId) {
+        checkOpen();
+        int hashCode = calculateHashCode(passportId);
+        String name = this.added.getName(passportId, hashCode);
+        if (name != null || isRemoved(passportId)) {
+            return name;
+        }
+        int slot = find(passportId, hashCode);
+        return slot == SecHashTable.NOT_FOUND ? null : readName(recordOffset(slot));
+    }
+
+    @Override
+    public boolean remove(String passportId) {
+        checkOpen();
+        int hashCode = calculateHashCode(passportId);
+        if (this.added.removePassenger(passportId, hashCode)) {
+            return true;
+        } else if (isRemoved(passportId) || find(passportId, hashCode) == SecHashTable.NOT_FOUND) {
+            return false;
+        }
+        this.removed.add(passportId);
+        return true;
+    }
+
+    @Override
+    public boolean addPassenger(String name, String passportId) {
+        checkOpen();
+        if (get(passportId) != null) {
+            return false;
+        }
+        return this.added.addPassenger(name, passportId, calculateHashCode(passportId))
+                == AddResult.INSERTED;
+    }
+
+    @Override
+    public int count() {
+        checkOpen();
+        return this.snapshotCount - this.removed.size() + this.added.getPassengerCount();
+    }
+
+    @Override
+    public int getIndex(String passportId) {
+        checkOpen();
+        int hashCode = calculateHashCode(passportId);
+        int index = this.added.getIndex(passportId, hashCode);
+        if (index != SecHashTable.NOT_FOUND) {
+            return this.size + index;
+        }
+        return isRemoved(passportId) ? SecHashTable.NOT_FOUND : find(passportId, hashCode);
+    }
+
+    /**
+     * Passes every passenger to the action: those of the snapshot that have
+     * not been removed, then those added since opening.
+     *
+     * @param action receives each passport ID and the name on record
+     */
+    @Override
+    public void forEachPassenger(BiConsumer<? super String, ? super String> action) {
+        checkOpen();
+        for (int slot = 0; slot < this.size; slot++) {
+            if (slotRef(slot) != 0) {
+                int record = recordOffset(slot);
+                String passportId = readString(record + SecurityDBSnapshot.RECORD_HEADER_BYTES,
+                        this.map.getInt(record));
+                if (!isRemoved(passportId)) {
+                    action.accept(passportId, readName(record));
+                }
+            }
+        }
+        this.added.forEachPassenger(action);
+    }
+
+    /**
+     * Unmaps the snapshot. Further calls to any other method throw
+     * IllegalStateException; closing twice is a no-op.
+     */
+    @Override
+    public void close() {
+        if (!this.closed) {
+            this.closed = true;
+            OffHeapSecurityDB.free(this.map);
+            this.map = null;
+        }
+    }
+
+    private void checkOpen() {
+        if (this.closed) {
+            throw new IllegalStateException("MappedSecurityDB is closed");
+        }
+    }
+
+    private boolean isRemoved(String passportId) {
+        return !this.removed.isEmpty() && this.removed.contains(passportId);
+    }
+
+    private int find(String passportId, int hashCode) {
+        int slot = SecHashTable.homeSlot(hashCode, this.size);
+        for (int distance = 0; distance < this.size; distance++) {
+            int ref = slotRef(slot);
+            if (ref == 0 || probeDistance(slot) < distance) {
+                return SecHashTable.NOT_FOUND;
+            } else if (slotHash(slot) == hashCode && passportEquals(ref - 1, passportId)) {
+                return slot;
+            }
+            slot = slot + 1 == this.size ? 0 : slot + 1;
+        }
+        return SecHashTable.NOT_FOUND;
+    }
+
+    private boolean passportEquals(int ref, String passportId) {
+        int record = this.recordsStart + ref;
+        int length = this.map.getInt(record);
+        if (length != passportId.length()) {
+            return false;
+        }
+        int start = record + SecurityDBSnapshot.RECORD_HEADER_BYTES;
+        for (int i = 0; i < length; i++) {
+            if (this.map.getChar(start + i * 2) != passportId.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readName(int record) {
+        int passportLength = this.map.getInt(record);
+        return readString(record + SecurityDBSnapshot.RECORD_HEADER_BYTES + passportLength * 2,
+                this.map.getInt(record + 4));
+    }
+
+    private String readString(int start, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = this.map.getChar(start + i * 2);
+        }
+        return new String(chars);
+    }
+
+    /* Absolute position of the record the slot refers to */
+    private int recordOffset(int slot) {
+        return this.recordsStart + slotRef(slot) - 1;
+    }
+
+    private int slotHash(int slot) {
+        return this.map.getInt(SecurityDBSnapshot.HEADER_BYTES + slot * SecurityDBSnapshot.SLOT_BYTES);
+    }
+
+    private int slotRef(int slot) {
+        return this.map.getInt(SecurityDBSnapshot.HEADER_BYTES + slot * SecurityDBSnapshot.SLOT_BYTES + 4);
+    }
+
+    private int probeDistance(int slot) {
+        int home = SecHashTable.homeSlot(slotHash(slot), this.size);
+        return slot >= home ? slot - home : slot + this.size - home;
+    }
+}
@@ -0,0 +1,385 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.BiConsumer;
+
+/**
+ * Security database whose passengers live outside the Java heap, so the
+ * garbage collector never has to trace them and pause times do not grow
+ * with the number of passengers.
+ *
+ * Two direct buffers are managed here. The slot buffer is a Robin Hood
+ * linear-probing table of 8-byte slots, each holding the passport hash and
+ * the offset (plus one, so zero marks an empty slot) of the passenger's
+ * record. The record slab holds records back to back, each laid out as the
+ * passport length, the name length, then the UTF-16 characters of both.
+ * Records of removed passengers are reclaimed when the slab next fills.
+ *
+ * The database must be closed when no longer needed; close() releases the
+ * native memory immediately where the JVM allows it, and every later call
+ * throws IllegalStateException. Instances are not thread-safe.
+ */
+public class OffHeapSecurityDB extends SecurityDBBase implements PassengerSource, AutoCloseable {
+
+    private static final int SLOT_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    /* Unsafe.invokeCleaner, used to free direct buffers eagerly if present */
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final PassportHash hashStrategy;
+    private final double loadFactor;
+
+    private ByteBuffer slots;
+    private int size;
+    private int threshold;
+    private int passengerCount;
+
+    private ByteBuffer slab;
+    private int slabUsed;
+    private int slabGarbage;
+
+    private boolean closed;
+
+    /**
+     * Creates an empty off-heap database using the default load factor and
+     * passport hash.
+     *
+     * @param numPlanes             number of planes per day
+     * @param numPassengersPerPlane number of passengers per plane
+     */
+    public OffHeapSecurityDB(int numPlanes, int numPassengersPerPlane) {
+        this(numPlanes, numPassengersPerPlane, new SecurityDBConfig());
+    }
+
+    /**
+     * Creates an empty off-heap database using the load factor and passport
+     * hash of the given config. Compact keys do not apply off-heap.
+     *
+     * @param numPlanes             number of planes per day
+     * @param numPassengersPerPlane number of passengers per plane
+     * @param config                table tuning options
+     */
+    public OffHeapSecurityDB(int numPlanes, int numPassengersPerPlane, SecurityDBConfig config) {
+        super(numPlanes, numPassengersPerPlane);
+        SecHashTable.checkLoadFactor(config.getLoadFactor());
+        this.hashStrategy = config.getHashStrategy();
+        this.loadFactor = config.getLoadFactor();
+        int expected = Math.max(numPlanes * numPassengersPerPlane, 1);
+        this.size = SecHashTable.setSize((int) Math.ceil(expected / loadFactor));
+        this.threshold = SecHashTable.calculateThreshold(this.size, loadFactor);
+        this.slots = allocate((long) this.size * SLOT_BYTES);
+        this.slab = allocate((long) expected * 64);
+    }
+
+    @Override
+    public int calculateHashCode(String key) {
+        return this.hashStrategy.hash(key);
+    }
+
+    @Override
+    public int size() {
+        checkOpen();
+        return this.size;
+    }
+
+    @Override
+    public String get(String passportId) {
+        checkOpen();
+        int index = find(passportId, calculateHashCode(passportId));
+        if (index == SecHashTable.NOT_FOUND) {
+            return null;
+        }
+        return readName(recordOffset(index));
+    }
+
+    @Override
+    public boolean remove(String passportId) {
+        checkOpen();
+        int index = find(passportId, calculateHashCode(passportId));
+        if (index == SecHashTable.NOT_FOUND) {
+            return false;
+        }
+        this.slabGarbage += recordLength(recordOffset(index));
+        shiftBackward(index);
+        this.passengerCount -= 1;
+        return true;
+    }
+
+    @Override
+    public boolean addPassenger(String name, String passportId) {
+        checkOpen();
+        int hashCode = calculateHashCode(passportId);
+        if (find(passportId, hashCode) != SecHashTable.NOT_FOUND) {
+            return false;
+        }
+        if (this.passengerCount + 1 > this.threshold) {
+            tableResize();
+        }
+        insert(hashCode, appendRecord(name, passportId) + 1);
+        this.passengerCount += 1;
+        return true;
+    }
+
+    @Override
+    public int count() {
+        checkOpen();
+        return this.passengerCount;
+    }
+
+    @Override
+    public int getIndex(String passportId) {
+        checkOpen();
+        return find(passportId, calculateHashCode(passportId));
+    }
+
+    /**
+     * Passes every passenger to the action, in slot order.
+     *
+     * @param action receives each passport ID and the name on record
+     */
+    @Override
+    public void forEachPassenger(BiConsumer<? super String, ? super String> action) {
+        checkOpen();
+        for (int slot = 0; slot < this.size; slot++) {
+            int record = recordOffset(slot);
+            if (record >= 0) {
+                action.accept(readString(record + RECORD_HEADER_BYTES, this.slab.getInt(record)),
+                        readName(record));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes of native memory currently reserved.
+     *
+     * @return reserved off-heap bytes
+     */
+    public long offHeapBytes() {
+        checkOpen();
+        return (long) this.slots.capacity() + this.slab.capacity();
+    }
+
+    /**
+     * Releases the native memory held by this database. Further calls to
+     * any other method throw IllegalStateException; closing twice is a
+     * no-op.
+     */
+    @Override
+    public void close() {
+        if (!this.closed) {
+            this.closed = true;
+            free(this.slots);
+            free(this.slab);
+            this.slots = null;
+            this.slab = null;
+        }
+    }
+
+    private void checkOpen() {
+        if (this.closed) {
+            throw new IllegalStateException("OffHeapSecurityDB is closed");
+        }
+    }
+
+    private int find(String passportId, int hashCode) {
+        int slot = SecHashTable.homeSlot(hashCode, this.size);
+        for (int distance = 0; distance < this.size; distance++) {
+            int ref = this.slots.getInt(slot * SLOT_BYTES + 4);
+            if (ref == 0 || probeDistance(slot) < distance) {
+                return SecHashTable.NOT_FOUND;
+            } else if (slotHash(slot) == hashCode && passportEquals(ref - 1, passportId)) {
+                return slot;
+            }
+            slot = next(slot);
+        }
+        return SecHashTable.NOT_FOUND;
+    }
+
+    private String readName(int record) {
+        int passportLength = this.slab.getInt(record);
+        return readString(record + RECORD_HEADER_BYTES + passportLength * 2,
+                this.slab.getInt(record + 4));
+    }
+
+    private String readString(int start, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = this.slab.getChar(start + i * 2);
+        }
+        return new String(chars);
+    }
+
+    private boolean passportEquals(int record, String passportId) {
+        int length = this.slab.getInt(record);
+        if (length != passportId.length()) {
+            return false;
+        }
+        int start = record + RECORD_HEADER_BYTES;
+        for (int i = 0; i < length; i++) {
+            if (this.slab.getChar(start + i * 2) != passportId.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void insert(int hashCode, int ref) {
+        int slot = SecHashTable.homeSlot(hashCode, this.size);
+        int distance = 0;
+        while (this.slots.getInt(slot * SLOT_BYTES + 4) != 0) {
+            int residentDistance = probeDistance(slot);
+            if (residentDistance < distance) {
+                int displacedHash = slotHash(slot);
+                int displacedRef = this.slots.getInt(slot * SLOT_BYTES + 4);
+                writeSlot(slot, hashCode, ref);
+                hashCode = displacedHash;
+                ref = displacedRef;
+                distance = residentDistance;
+            }
+            slot = next(slot);
+            distance++;
+        }
+        writeSlot(slot, hashCode, ref);
+    }
+
+    private void shiftBackward(int hole) {
+        int slot = next(hole);
+        while (this.slots.getInt(slot * SLOT_BYTES + 4) != 0 && probeDistance(slot) > 0) {
+            writeSlot(hole, slotHash(slot), this.slots.getInt(slot * SLOT_BYTES + 4));
+            hole = slot;
+            slot = next(slot);
+        }
+        writeSlot(hole, 0, 0);
+    }
+
+    private void tableResize() {
+        ByteBuffer oldSlots = this.slots;
+        int oldSize = this.size;
+        this.size = SecHashTable.setSize(this.size * 2);
+        this.threshold = SecHashTable.calculateThreshold(this.size, this.loadFactor);
+        this.slots = allocate((long) this.size * SLOT_BYTES);
+        for (int i = 0; i < oldSize; i++) {
+            int ref = oldSlots.getInt(i * SLOT_BYTES + 4);
+            if (ref != 0) {
+                insert(oldSlots.getInt(i * SLOT_BYTES), ref);
+            }
+        }
+        free(oldSlots);
+    }
+
+    /**
+     * Writes a record at the end of the slab and returns its offset. When
+     * the slab is full it is compacted if at least half of it belongs to
+     * removed passengers, and doubled otherwise.
+     */
+    private int appendRecord(String name, String passportId) {
+        int length = RECORD_HEADER_BYTES + (passportId.length() + name.length()) * 2;
+        if ((long) this.slabUsed + length > this.slab.capacity()) {
+            long live = this.slabUsed - this.slabGarbage;
+            long capacity = this.slabGarbage * 2 >= this.slabUsed
+                    ? Math.max(this.slab.capacity(), (live + length) * 2)
+                    : Math.max((long) this.slab.capacity() * 2, this.slabUsed + (long) length);
+            moveSlab(allocate(capacity));
+        }
+        int record = this.slabUsed;
+        this.slab.putInt(record, passportId.length());
+        this.slab.putInt(record + 4, name.length());
+        int position = record + RECORD_HEADER_BYTES;
+        for (int i = 0; i < passportId.length(); i++, position += 2) {
+            this.slab.putChar(position, passportId.charAt(i));
+        }
+        for (int i = 0; i < name.length(); i++, position += 2) {
+            this.slab.putChar(position, name.charAt(i));
+        }
+        this.slabUsed += length;
+        return record;
+    }
+
+    /**
+     * Copies every live record into the given slab, dropping garbage, and
+     * rewrites the slot references to match.
+     */
+    private void moveSlab(ByteBuffer target) {
+        int used = 0;
+        for (int i = 0; i < this.size; i++) {
+            int ref = this.slots.getInt(i * SLOT_BYTES + 4);
+            if (ref != 0) {
+                int length = recordLength(ref - 1);
+                ByteBuffer record = this.slab.duplicate();
+                record.limit(ref - 1 + length).position(ref - 1);
+                target.position(used);
+                target.put(record);
+                this.slots.putInt(i * SLOT_BYTES + 4, used + 1);
+                used += length;
+            }
+        }
+        free(this.slab);
+        this.slab = target;
+        this.slabUsed = used;
+        this.slabGarbage = 0;
+    }
+
+    private int recordLength(int record) {
+        return RECORD_HEADER_BYTES + (this.slab.getInt(record) + this.slab.getInt(record + 4)) * 2;
+    }
+
+    private int recordOffset(int slot) {
+        return this.slots.getInt(slot * SLOT_BYTES + 4) - 1;
+    }
+
+    private int slotHash(int slot) {
+        return this.slots.getInt(slot * SLOT_BYTES);
+    }
+
+    private void writeSlot(int slot, int hashCode, int ref) {
+        this.slots.putInt(slot * SLOT_BYTES, hashCode);
+        this.slots.putInt(slot * SLOT_BYTES + 4, ref);
+    }
+
+    private int probeDistance(int slot) {
+        int home = SecHashTable.homeSlot(slotHash(slot), this.size);
+        return slot >= home ? slot - home : slot + this.size - home;
+    }
+
+    private int next(int slot) {
+        return slot + 1 == this.size ? 0 : slot + 1;
+    }
+
+    private static ByteBuffer allocate(long bytes) {
+        if (bytes > Integer.MAX_VALUE - 1) {
+            throw new IllegalStateException("Off-heap region larger than 2 GiB: " + bytes);
+        }
+        return ByteBuffer.allocateDirect((int) Math.max(bytes, 16)).order(ByteOrder.nativeOrder());
+    }
+
+    /* Releases a direct or mapped buffer now where the JVM allows it */
+    static void free(ByteBuffer buffer) {
+        if (INVOKE_CLEANER != null) {
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (ReflectiveOperationException ignored) {
+                // the buffer is released when it becomes unreachable instead
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+class Passenger {
+    private final String name;
+    private final String passportID;
+
+    public Passenger (String name, String passportID) {
+        this.name = name;
+        this.passportID = passportID;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.passportID.hashCode();
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public String getPassportID() {
+        return this.passportID;
+    }
+}
@@ -0,0 +1,60 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Secondary index from passenger names to passport IDs, kept by SecurityDB
+ * when SecurityDBConfig.nameIndex is set.
+ *
+ * Names are matched without regard to case. They are kept in a sorted map
+ * from the lower-cased name to the passports booked under it, so an exact
+ * query is one map lookup, and the names that start with a prefix form one
+ * contiguous run of the map. Both queries cost a logarithmic search plus
+ * time proportional to the number of matches.
+ */
+class PassengerNameIndex {
+
+    private final TreeMap<String, List<String>> byName = new TreeMap<>();
+
+    void add(String name, String passportId) {
+        this.byName.computeIfAbsent(normalize(name), key -> new ArrayList<>(1)).add(passportId);
+    }
+
+    void remove(String name, String passportId) {
+        String key = normalize(name);
+        List<String> passportIds = this.byName.get(key);
+        if (passportIds != null && passportIds.remove(passportId) && passportIds.isEmpty()) {
+            this.byName.remove(key);
+        }
+    }
+
+    void clear() {
+        this.byName.clear();
+    }
+
+    /** Passports booked under exactly this name, ignoring case */
+    List<String> findExact(String name) {
+        List<String> passportIds = this.byName.get(normalize(name));
+        return passportIds == null ? Collections.emptyList() : new ArrayList<>(passportIds);
+    }
+
+    /** Passports booked under any name starting with the prefix, in name order */
+    List<String> findPrefix(String prefix) {
+        String key = normalize(prefix);
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : this.byName.tailMap(key, true).entrySet()) {
+            if (!entry.getKey().startsWith(key)) {
+                break;
+            }
+            result.addAll(entry.getValue());
+        }
+        return result;
+    }
+
+    private static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,36 @@
+import java.util.function.BiConsumer;
+
+/**
+ * Database that can list every passenger it holds, which is all
+ * SecurityDBSnapshot needs to write a snapshot of it.
+ */
+public interface PassengerSource {
+
+    /**
+     * Returns the number of planes per day.
+     *
+     * @return number of planes per day
+     */
+    int getNumPlanes();
+
+    /**
+     * Returns the number of passengers on each plane.
+     *
+     * @return number of passengers per plane
+     */
+    int getNumPassengersPerPlane();
+
+    /**
+     * Counts the passengers on record.
+     *
+     * @return the number of passengers
+     */
+    int count();
+
+    /**
+     * Passes every passenger on record to the action.
+     *
+     * @param action receives each passport ID and the name on record
+     */
+    void forEachPassenger(BiConsumer<? super String, ? super String> action);
+}
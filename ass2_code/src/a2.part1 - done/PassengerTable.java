@@ -0,0 +1,90 @@
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Storage engine behind SecurityDB. Hash codes are computed by the caller
+ * with the database's PassportHash and passed in, so engines never hash.
+ */
+interface PassengerTable {
+
+    /** Number of buckets, including the empty ones */
+    int getSize();
+
+    /** Number of passengers stored */
+    int getPassengerCount();
+
+    /** Bucket index of the passenger, or SecHashTable.NOT_FOUND */
+    int getIndex(String passportId, int hashCode);
+
+    /** Name stored for the passport, or null if absent */
+    String getName(String passportId, int hashCode);
+
+    /**
+     * Name stored for the passport, or null if absent, measured on the way:
+     * probeLength[0] is set to the slots the lookup inspected, or to
+     * SecHashTable.NOT_FOUND on a miss
+     */
+    String getName(String passportId, int hashCode, int[] probeLength);
+
+    /** Slots a successful lookup of the passport inspects, or SecHashTable.NOT_FOUND */
+    default int getProbeLength(String passportId, int hashCode) {
+        int[] probeLength = new int[1];
+        getName(passportId, hashCode, probeLength);
+        return probeLength[0];
+    }
+
+    /**
+     * Sets names[i] to the name stored for passportIds[i], or null, for
+     * every i in [from, to), using the scratch buffers of the calling thread
+     */
+    void getNames(String[] passportIds, int[] hashCodes, String[] names, int from, int to,
+                  BatchScratch scratch);
+
+    /** Removes the passport, returning false if it was absent */
+    boolean removePassenger(String passportId, int hashCode);
+
+    /** Adds a passenger unless the passport is already present */
+    AddResult addPassenger(String name, String passportId, int hashCode);
+
+    /** Grows the table, if needed, so it holds this many passengers without resizing */
+    void ensureCapacity(int passengers);
+
+    /** Removes every passenger without clearing or reallocating the table */
+    void rollover();
+
+    /** Passes the passport ID and name of every passenger to the action */
+    void forEachPassenger(BiConsumer<? super String, ? super String> action);
+
+    /** Passes the cached hash code of every passenger to the action */
+    void forEachHash(IntConsumer action);
+
+    /**
+     * Buffers a batched lookup reuses from one call to the next, so that
+     * neither getNames nor SecurityDB's Bloom filter pass allocates. Each
+     * thread has its own; a table uses whichever group buffers it needs.
+     */
+    final class BatchScratch {
+        /** Per key of a probe group: the slot its probe goes on from, or NOT_FOUND once answered */
+        final int[] slots = new int[SecHashTable.PROBE_GROUP];
+        /** Per key of a probe group: the entry in its home slot, if the cached hash matched */
+        final Passenger[] entries = new Passenger[SecHashTable.PROBE_GROUP];
+        /** Per key of a probe group: its packed passport ID */
+        final long[] keys = new long[SecHashTable.PROBE_GROUP];
+        /* Keys of a batch that pass the Bloom filter: positions, IDs, hashes and names */
+        int[] positions = new int[0];
+        String[] candidateIds = new String[0];
+        int[] candidateHashes = new int[0];
+        String[] found = new String[0];
+
+        /** Grows the Bloom filter buffers to hold at least this many keys */
+        void reserve(int keys) {
+            if (this.positions.length < keys) {
+                int capacity = Math.max(keys, this.positions.length * 2);
+                this.positions = new int[capacity];
+                this.candidateIds = new String[capacity];
+                this.candidateHashes = new int[capacity];
+                this.found = new String[capacity];
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Blocked Bloom filter over passport hash codes, used by SecurityDB to
+ * answer most lookups of absent passports without probing the table.
+ *
+ * The bit array is split into 512-bit blocks of eight longs, the size of a
+ * cache line. Each hash selects one block and sets or tests HASHES bits
+ * inside it, so a query touches a single block and usually fails on its
+ * first word. Bits are never cleared: removed passports leave their bits
+ * set, which only costs false positives, and the owner rebuilds the filter
+ * from the table when they pile up.
+ *
+ * Keys are the 32-bit passport hashes, so passports with equal hashes are
+ * indistinguishable here and always pass together.
+ */
+class PassportBloomFilter {
+
+    private static final int BLOCK_WORDS = 8;
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASHES = 6;
+
+    private final long[] words;
+    private final int blocks;
+    private final int capacity;
+    private int insertions;
+
+    /**
+     * Creates an empty filter for up to the given number of keys at a false
+     * positive rate of about one percent.
+     */
+    PassportBloomFilter(int capacity) {
+        this.capacity = Math.max(capacity, 1);
+        this.blocks = (int) Math.max(((long) this.capacity * BITS_PER_KEY + 511) / 512, 1);
+        this.words = new long[this.blocks * BLOCK_WORDS];
+    }
+
+    /** Number of keys the filter was sized for */
+    int getCapacity() {
+        return this.capacity;
+    }
+
+    /** Number of keys added, including any since removed from the table */
+    int getInsertions() {
+        return this.insertions;
+    }
+
+    void add(int hashCode) {
+        long mixed = mix(hashCode);
+        int base = block(mixed) * BLOCK_WORDS;
+        long bits = mix(mixed);
+        for (int i = 0; i < HASHES; i++, bits >>>= 9) {
+            int bit = (int) bits & 511;
+            this.words[base + (bit >>> 6)] |= 1L << bit;
+        }
+        this.insertions++;
+    }
+
+    /** Returns false only if no passport with this hash was ever added */
+    boolean mightContain(int hashCode) {
+        long mixed = mix(hashCode);
+        int base = block(mixed) * BLOCK_WORDS;
+        long bits = mix(mixed);
+        for (int i = 0; i < HASHES; i++, bits >>>= 9) {
+            int bit = (int) bits & 511;
+            if ((this.words[base + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Maps the high half of the mixed hash onto [0, blocks) without a division */
+    private int block(long mixed) {
+        return (int) (((mixed >>> 32) * this.blocks) >>> 32);
+    }
+
+    /* MurmurHash3's 64-bit finalizer, spreading the key over every bit */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Strategy used by SecurityDB to turn a passport ID into a hash code.
+ *
+ * Implementations must be stateless, must not allocate, and must return the
+ * same value for equal passport IDs.
+ */
+public interface PassportHash {
+
+    /**
+     * The original SecurityDB hash: a running sum of running sums of the
+     * characters, plus the length. Kept for compatibility with hash codes
+     * computed by earlier versions; it collides heavily on IDs that share
+     * characters.
+     */
+    PassportHash LEGACY = passportId -> {
+        int result = 0;
+        int temp = 0;
+        int length = passportId.length();
+        for (int i = 0; i < length; i++) {
+            temp = temp + passportId.charAt(i);
+            result = result + temp;
+        }
+        return result + length;
+    };
+
+    /**
+     * MurmurHash3 (x86, 32-bit) over the UTF-16 code units of the passport
+     * ID, two characters per block. Every input bit affects every output bit.
+     */
+    PassportHash MURMUR3 = passportId -> {
+        int length = passportId.length();
+        int h = 0;
+        int i = 0;
+        for (; i + 1 < length; i += 2) {
+            int k = passportId.charAt(i) | (passportId.charAt(i + 1) << 16);
+            h ^= mixBlock(k);
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
+        if (i < length) {
+            h ^= mixBlock(passportId.charAt(i));
+        }
+        return finish(h ^ (length * 2));
+    };
+
+    /** Hash used when SecurityDB is created without an explicit strategy */
+    PassportHash DEFAULT = MURMUR3;
+
+    /**
+     * Calculates the hash code of the given passport ID.
+     *
+     * @param passportId passport ID to hash
+     * @return hash code of the passport ID
+     */
+    int hash(String passportId);
+
+    private static int mixBlock(int k) {
+        k *= 0xcc9e2d51;
+        k = Integer.rotateLeft(k, 15);
+        return k * 0x1b873593;
+    }
+
+    private static int finish(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+}
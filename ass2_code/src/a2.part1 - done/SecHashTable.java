@@ -0,0 +1,336 @@
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+
+class SecHashTable implements PassengerTable {
+
+    /** Load factor used when the caller does not supply one */
+    static final double DEFAULT_LOAD_FACTOR = 0.75;
+
+    /** Returned by getIndex when the passenger is not in the table */
+    static final int NOT_FOUND = -1;
+
+    /** Tables at least this large no longer grow */
+    static final int MAX_GROWABLE_SIZE = 1 << 30;
+
+    /** Keys whose home slots a batched lookup loads before probing any of them */
+    static final int PROBE_GROUP = 16;
+
+    /*
+     * Robin Hood linear probing: an entry being inserted takes the slot of
+     * any resident that sits closer to its own home slot, so every probe
+     * chain is ordered by distance from home. That keeps the variance of
+     * probe lengths small and lets a lookup stop as soon as it meets an
+     * entry that is closer to home than the key would be. The full hash of
+     * every entry is cached in hashes[] so probing never recomputes it, and
+     * the passport ID is compared only when the cached hashes match.
+     *
+     * gens[] records the generation each slot was written in, and a slot is
+     * occupied only if that is the current generation. rollover() therefore
+     * empties the table by bumping the generation; passengers of earlier
+     * generations stay referenced until their slots are reused.
+     */
+    private int size;
+    private final double loadFactor;
+    private int threshold;
+    private Passenger[] array;
+    private int[] hashes;
+    private int[] gens;
+    private int generation = 1;
+    private int passengerCount;
+
+    public SecHashTable (int expectedPassengers, double loadFactor) {
+        checkLoadFactor(loadFactor);
+        this.loadFactor = loadFactor;
+        this.size = setSize((int) Math.ceil(Math.max(expectedPassengers, 1) / loadFactor));
+        this.threshold = calculateThreshold(this.size);
+        this.array = new Passenger[this.size];
+        this.hashes = new int[this.size];
+        this.gens = new int[this.size];
+        this.passengerCount = 0;
+    }
+
+    public int getSize() {
+        return this.size;
+    }
+
+    public int getPassengerCount() {
+        return this.passengerCount;
+    }
+
+    public int getIndex (String passportId, int hashCode) {
+        return indexFrom(homeSlot(hashCode, this.size), 0, passportId, hashCode);
+    }
+
+    /* Goes on with a lookup from the given slot, which is the given distance from home */
+    private int indexFrom (int slot, int distance, String passportId, int hashCode) {
+        for (; distance < this.size; distance++) {
+            if (!isOccupied(slot) || probeDistance(slot) < distance) {
+                return NOT_FOUND;
+            } else if (this.hashes[slot] == hashCode
+                    && this.array[slot].getPassportID().equals(passportId)) {
+                return slot;
+            }
+            slot = next(slot);
+        }
+        return NOT_FOUND;
+    }
+
+
+    public Passenger getPassenger (String passportId, int hashCode) {
+        int index = getIndex(passportId, hashCode);
+        if (index == NOT_FOUND) {
+            return null;
+        } else {
+            return this.array[index];
+        }
+    }
+
+    public String getName (String passportId, int hashCode) {
+        Passenger result = getPassenger(passportId, hashCode);
+        return result == null ? null : result.getName();
+    }
+
+    public String getName (String passportId, int hashCode, int[] probeLength) {
+        int index = getIndex(passportId, hashCode);
+        if (index == NOT_FOUND) {
+            probeLength[0] = NOT_FOUND;
+            return null;
+        }
+        probeLength[0] = probeDistance(index) + 1;
+        return this.array[index].getName();
+    }
+
+    /**
+     * Batched lookup in groups of PROBE_GROUP keys. A first loop, with no
+     * dependency between iterations, loads the generation, cached hash and
+     * entry of every key's home slot, so those cache misses of the group
+     * overlap instead of being paid one after another. The second loop
+     * compares passport IDs, which still follows each entry to its String
+     * one key at a time, and goes on probing from the home slot only for
+     * keys not found there.
+     */
+    public void getNames (String[] passportIds, int[] hashCodes, String[] names,
+                          int from, int to, PassengerTable.BatchScratch scratch) {
+        int[] slots = scratch.slots;
+        Passenger[] entries = scratch.entries;
+        for (int start = from; start < to; start += PROBE_GROUP) {
+            int end = Math.min(start + PROBE_GROUP, to);
+            for (int i = start; i < end; i++) {
+                int home = homeSlot(hashCodes[i], this.size);
+                boolean occupied = isOccupied(home);
+                slots[i - start] = occupied ? home : NOT_FOUND;
+                entries[i - start] = occupied && this.hashes[home] == hashCodes[i]
+                        ? this.array[home] : null;
+            }
+            for (int i = start; i < end; i++) {
+                int home = slots[i - start];
+                Passenger entry = entries[i - start];
+                entries[i - start] = null;
+                if (home == NOT_FOUND) {
+                    names[i] = null;
+                } else if (entry != null && entry.getPassportID().equals(passportIds[i])) {
+                    names[i] = entry.getName();
+                } else {
+                    int index = indexFrom(next(home), 1, passportIds[i], hashCodes[i]);
+                    names[i] = index == NOT_FOUND ? null : this.array[index].getName();
+                }
+            }
+        }
+    }
+
+    public boolean removePassenger (String passportId, int hashCode) {
+        int index = getIndex(passportId, hashCode);
+        if (index == NOT_FOUND) {
+            return false;
+        } else {
+            shiftBackward(index);
+            this.passengerCount -= 1;
+            return true;
+        }
+    }
+
+    /**
+     * Empties the given slot without breaking any probe chain that runs
+     * through it. With Robin Hood ordering every following entry of the
+     * cluster that is not already in its home slot moves back by one.
+     */
+    private void shiftBackward (int hole) {
+        int slot = next(hole);
+        while (isOccupied(slot) && probeDistance(slot) > 0) {
+            this.array[hole] = this.array[slot];
+            this.hashes[hole] = this.hashes[slot];
+            hole = slot;
+            slot = next(slot);
+        }
+        this.array[hole] = null;
+        this.hashes[hole] = 0;
+        this.gens[hole] = 0;
+    }
+
+    /**
+     * Looks for the passport and, if it is absent, inserts the passenger
+     * from the slot where the search stopped, so an add probes only once.
+     */
+    public AddResult addPassenger (String name, String passportId, int hashCode) {
+        int slot = homeSlot(hashCode, this.size);
+        int distance = 0;
+        while (isOccupied(slot) && probeDistance(slot) >= distance) {
+            if (this.hashes[slot] == hashCode
+                    && this.array[slot].getPassportID().equals(passportId)) {
+                return this.array[slot].getName().equals(name)
+                        ? AddResult.DUPLICATE : AddResult.CONFLICTING_NAME;
+            }
+            slot = next(slot);
+            distance++;
+        }
+        if (this.passengerCount + 1 > this.threshold && this.size < MAX_GROWABLE_SIZE) {
+            resize(setSize(this.size * 2));
+            slot = homeSlot(hashCode, this.size);
+            distance = 0;
+        } else if (this.passengerCount + 1 >= this.size) {
+            return AddResult.FULL;
+        }
+        insert(slot, distance, new Passenger(name, passportId), hashCode);
+        this.passengerCount += 1;
+        return AddResult.INSERTED;
+    }
+
+    public void ensureCapacity (int passengers) {
+        int needed = setSize((int) Math.min(Math.ceil(passengers / this.loadFactor),
+                MAX_GROWABLE_SIZE));
+        if (needed > this.size) {
+            resize(needed);
+        }
+    }
+
+    /**
+     * Inserts a passenger known to be absent, starting at the given slot
+     * and probe distance, and displacing any resident that is closer to its
+     * home slot than the carried entry. The caller guarantees the table has
+     * at least one free slot.
+     */
+    private void insert (int slot, int distance, Passenger passenger, int hashCode) {
+        while (isOccupied(slot)) {
+            int residentDistance = probeDistance(slot);
+            if (residentDistance < distance) {
+                Passenger displaced = this.array[slot];
+                int displacedHash = this.hashes[slot];
+                this.array[slot] = passenger;
+                this.hashes[slot] = hashCode;
+                passenger = displaced;
+                hashCode = displacedHash;
+                distance = residentDistance;
+            }
+            slot = next(slot);
+            distance++;
+        }
+        this.array[slot] = passenger;
+        this.hashes[slot] = hashCode;
+        this.gens[slot] = this.generation;
+    }
+
+    /**
+     * Moves the table to the given (prime) size, rehashing every passenger
+     * into it from its cached hash.
+     */
+    private void resize (int newSize) {
+        Passenger[] oldArray = this.array;
+        int[] oldHashes = this.hashes;
+        int[] oldGens = this.gens;
+        this.size = newSize;
+        this.array = new Passenger[this.size];
+        this.hashes = new int[this.size];
+        this.gens = new int[this.size];
+        this.threshold = calculateThreshold(this.size);
+        for (int i = 0; i < oldArray.length; i++) {
+            if (oldGens[i] == this.generation) {
+                insert(homeSlot(oldHashes[i], this.size), 0, oldArray[i], oldHashes[i]);
+            }
+        }
+    }
+
+    /**
+     * Starts a new generation, which leaves every slot unoccupied. Only
+     * when the generation counter would wrap are the arrays cleared, so
+     * that no slot from 2^31 rollovers ago can look current again.
+     */
+    public void rollover () {
+        if (this.generation == Integer.MAX_VALUE) {
+            Arrays.fill(this.array, null);
+            Arrays.fill(this.gens, 0);
+            this.generation = 1;
+        } else {
+            this.generation++;
+        }
+        this.passengerCount = 0;
+    }
+
+    public void forEachPassenger (BiConsumer<? super String, ? super String> action) {
+        for (int i = 0; i < this.size; i++) {
+            if (isOccupied(i)) {
+                action.accept(this.array[i].getPassportID(), this.array[i].getName());
+            }
+        }
+    }
+
+    public void forEachHash (IntConsumer action) {
+        for (int i = 0; i < this.size; i++) {
+            if (isOccupied(i)) {
+                action.accept(this.hashes[i]);
+            }
+        }
+    }
+
+    private boolean isOccupied (int slot) {
+        return this.gens[slot] == this.generation;
+    }
+
+    private int probeDistance (int slot) {
+        int home = homeSlot(this.hashes[slot], this.size);
+        return slot >= home ? slot - home : slot + this.size - home;
+    }
+
+    private int next (int slot) {
+        return slot + 1 == this.size ? 0 : slot + 1;
+    }
+
+    private int calculateThreshold (int tableSize) {
+        return calculateThreshold(tableSize, this.loadFactor);
+    }
+
+    static int calculateThreshold (int tableSize, double loadFactor) {
+        return Math.min((int) (tableSize * loadFactor), tableSize - 1);
+    }
+
+    static void checkLoadFactor (double loadFactor) {
+        if (!(loadFactor > 0 && loadFactor < 1)) {
+            throw new IllegalArgumentException("Load factor must be in (0, 1): " + loadFactor);
+        }
+    }
+
+    static int homeSlot (int hashCode, int tableSize) {
+        return (hashCode & 0x7fffffff) % tableSize;
+    }
+
+    private static boolean checkPrime (int number) {
+        if (number < 2) {
+            return false;
+        }
+        for (int i = 2; (long) i * i <= number; i++) {
+            if (number % i == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    static int setSize (int potentialSize) {
+        int temp = Math.max(potentialSize + 1, 2);
+        while (!checkPrime(temp)) {
+            temp++;
+        }
+        return temp;
+    }
+}
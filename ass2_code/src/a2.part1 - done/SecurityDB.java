@@ -1,8 +1,59 @@
-public class SecurityDB extends SecurityDBBase {
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+public class SecurityDB extends SecurityDBBase implements PassengerSource {
 
     /* Implement all the necessary methods here */
 
-    private SecHashTable passengers;
+    /* Optimistic read attempts before a reader falls back to the read lock */
+    private static final int OPTIMISTIC_ATTEMPTS = 8;
+
+    /* Passengers hashed up front and inserted under one lock acquisition */
+    private static final int LOAD_BATCH = 1024;
+
+    /* Keys looked up per optimistic read in getAll */
+    private static final int BATCH_CHUNK = 64;
+
+    /* Keys per fork-join task when getAll splits a batch across a pool */
+    private static final int PARALLEL_CHUNK = 4096;
+
+    /* Removals tolerated before the Bloom filter is rebuilt regardless of size */
+    private static final int BLOOM_MIN_REBUILD = 1024;
+
+    /* Buffers for batched lookups, shared by every database a thread queries */
+    private static final ThreadLocal<PassengerTable.BatchScratch> SCRATCH =
+            ThreadLocal.withInitial(PassengerTable.BatchScratch::new);
+
+    private final PassengerTable passengers;
+    private final PassportHash hashStrategy;
+    /* Guards the table in optimistic-read mode; null when single-threaded */
+    private final StampedLock lock;
+    private final SuspiciousPassengerListener suspiciousListener;
+    /*
+     * Filter of the hashes on record, or null if disabled. Only changed
+     * under the write lock, and its bits are plain writes, so readers only
+     * consult it inside read(): a validated stamp or the read lock orders
+     * them after every add that completed, which a false negative needs.
+     */
+    private volatile PassportBloomFilter bloom;
+    private int bloomRemovals;
+    /* Passports by name, or null if disabled; guarded by the lock */
+    private final PassengerNameIndex names;
+    /* Operation counters, or null if disabled */
+    private final SecurityDBStats stats;
+
     /**
      * Creates an empty hashtable and a variable to count non-empty elements.
      *
@@ -10,8 +61,56 @@ public class SecurityDB extends SecurityDBBase {
      * @param numPassengersPerPlane number of passengers per plane
      */
     public SecurityDB(int numPlanes, int numPassengersPerPlane) {
+        this(numPlanes, numPassengersPerPlane, SecHashTable.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Creates an empty hashtable that rehashes into a larger table once the
+     * ratio of passengers to buckets passes the given load factor.
+     *
+     * @param numPlanes             number of planes per day
+     * @param numPassengersPerPlane number of passengers per plane
+     * @param loadFactor            maximum fill ratio before growing, in (0, 1)
+     */
+    public SecurityDB(int numPlanes, int numPassengersPerPlane, double loadFactor) {
+        this(numPlanes, numPassengersPerPlane, loadFactor, PassportHash.DEFAULT);
+    }
+
+    /**
+     * Creates an empty hashtable that hashes passport IDs with the given
+     * strategy. Use PassportHash.LEGACY to reproduce the original hash codes.
+     *
+     * @param numPlanes             number of planes per day
+     * @param numPassengersPerPlane number of passengers per plane
+     * @param loadFactor            maximum fill ratio before growing, in (0, 1)
+     * @param hashStrategy          function used to hash passport IDs
+     */
+    public SecurityDB(int numPlanes, int numPassengersPerPlane, double loadFactor,
+                      PassportHash hashStrategy) {
+        this(numPlanes, numPassengersPerPlane,
+                new SecurityDBConfig().loadFactor(loadFactor).hashStrategy(hashStrategy));
+    }
+
+    /**
+     * Creates an empty hashtable with the options in the given config.
+     *
+     * @param numPlanes             number of planes per day
+     * @param numPassengersPerPlane number of passengers per plane
+     * @param config                table tuning options
+     */
+    public SecurityDB(int numPlanes, int numPassengersPerPlane, SecurityDBConfig config) {
         super(numPlanes, numPassengersPerPlane);
-        this.passengers = new SecHashTable(numPassengersPerPlane * numPlanes, MAX_CAPACITY);
+        this.hashStrategy = config.getHashStrategy();
+        this.passengers = config.newTable(numPassengersPerPlane * numPlanes);
+        this.lock = config.isOptimisticReads() ? new StampedLock() : null;
+        this.suspiciousListener = config.getSuspiciousPassengerListener() != null
+                ? config.getSuspiciousPassengerListener()
+                : new SuspiciousPassengerQueue();
+        this.names = config.isNameIndex() ? new PassengerNameIndex() : null;
+        this.stats = config.isStatistics() ? new SecurityDBStats(this) : null;
+        if (config.isBloomFilter()) {
+            rebuildBloom();
+        }
     }
 
     /**
@@ -22,16 +121,7 @@ public class SecurityDB extends SecurityDBBase {
      */
     @Override
     public int calculateHashCode(String key) {
-        int result = 0;
-        char[] passport = key.toCharArray();
-        int temp = 0;
-        int count = 0;
-        for (char i : passport) {
-            temp = temp + (int) i;
-            result = result + temp;
-            count ++;
-        }
-        return result + count;
+        return this.hashStrategy.hash(key);
     }
 
     /**
@@ -41,7 +131,7 @@ public class SecurityDB extends SecurityDBBase {
      */
     @Override
     public int size() {
-        return this.passengers.getSize();
+        return read((table, passportId, hashCode) -> table.getSize(), null, 0);
     }
 
     /**
@@ -52,12 +142,196 @@ public class SecurityDB extends SecurityDBBase {
      */
     @Override
     public String get(String passportId) {
-        Passenger result = this.passengers.getPassenger(calculateHashCode(passportId));
-        if (result != null) {
-            return result.getPassportID();
-        } else {
+        int hashCode = calculateHashCode(passportId);
+        if (this.stats != null) {
+            return recordedGet(passportId, hashCode);
+        }
+        if (this.bloom != null && !read((table, id, hash) -> this.bloom.mightContain(hash),
+                passportId, hashCode)) {
+            return null;
+        }
+        return read(PassengerTable::getName, passportId, hashCode);
+    }
+
+    /*
+     * get() with statistics. A lookup picked for sampling is timed and has
+     * its probe length measured by the lookup itself.
+     */
+    private String recordedGet(String passportId, int hashCode) {
+        if (this.bloom != null && !read((table, id, hash) -> this.bloom.mightContain(hash),
+                passportId, hashCode)) {
+            this.stats.recordBloomRejection();
             return null;
         }
+        if (!this.stats.shouldSample()) {
+            String name = read(PassengerTable::getName, passportId, hashCode);
+            this.stats.recordLookup(name != null);
+            return name;
+        }
+        int[] probeLength = new int[1];
+        long start = System.nanoTime();
+        String name = read((table, id, hash) -> table.getName(id, hash, probeLength),
+                passportId, hashCode);
+        long elapsed = System.nanoTime() - start;
+        this.stats.recordSampledLookup(name != null, probeLength[0], elapsed);
+        return name;
+    }
+
+    /**
+     * Looks up a group of passengers at once, such as a boarding group. All
+     * passports are hashed in one pass and then probed in groups whose
+     * first memory accesses overlap, which is cheaper per key than calling
+     * get() for each.
+     *
+     * @param passportIds passengers' passport IDs
+     * @return each passenger's name, or null where the passport is not on
+     * record, in the order of passportIds
+     */
+    public String[] getAll(String[] passportIds) {
+        String[] names = new String[passportIds.length];
+        lookupRange(passportIds, new int[passportIds.length], names, 0, passportIds.length);
+        recordBatch(names);
+        return names;
+    }
+
+    /**
+     * Looks up a large group of passengers, splitting it into chunks that
+     * are looked up in parallel on the given pool. Batches no larger than a
+     * chunk are looked up on the calling thread. Lookups on a database
+     * without optimistic reads must not overlap with writers.
+     *
+     * @param passportIds passengers' passport IDs
+     * @param pool        pool to run the chunks on
+     * @return each passenger's name, or null where the passport is not on
+     * record, in the order of passportIds
+     */
+    public String[] getAll(String[] passportIds, ForkJoinPool pool) {
+        if (passportIds.length <= PARALLEL_CHUNK) {
+            return getAll(passportIds);
+        }
+        String[] names = new String[passportIds.length];
+        pool.invoke(new BatchLookup(passportIds, new int[passportIds.length], names,
+                0, passportIds.length));
+        recordBatch(names);
+        return names;
+    }
+
+    private void recordBatch(String[] names) {
+        if (this.stats != null) {
+            int hits = 0;
+            for (String name : names) {
+                if (name != null) {
+                    hits++;
+                }
+            }
+            this.stats.recordLookups(names.length, hits);
+        }
+    }
+
+    /**
+     * Returns true if every passport of the group is on record.
+     *
+     * @param passportIds passengers' passport IDs
+     * @return true if all passengers are in the system
+     */
+    public boolean containsAll(String[] passportIds) {
+        for (String name : getAll(passportIds)) {
+            if (name == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Hashes passportIds[from, to) into hashes, then looks them up a chunk
+     * at a time so that a concurrent writer only costs one chunk a retry.
+     * With a Bloom filter, only the passports that pass it are probed.
+     */
+    private void lookupRange(String[] passportIds, int[] hashes, String[] names,
+                             int from, int to) {
+        for (int i = from; i < to; i++) {
+            hashes[i] = calculateHashCode(passportIds[i]);
+        }
+        PassengerTable.BatchScratch scratch = SCRATCH.get();
+        if (this.bloom != null) {
+            scratch.reserve(to - from);
+            int[] positions = scratch.positions;
+            int candidates = read((table, passportId, hashCode) -> {
+                PassportBloomFilter filter = this.bloom;
+                int passed = 0;
+                for (int i = from; i < to; i++) {
+                    if (filter.mightContain(hashes[i])) {
+                        positions[passed++] = i;
+                    } else {
+                        names[i] = null;
+                    }
+                }
+                return passed;
+            }, null, 0);
+            if (candidates < to - from) {
+                String[] candidateIds = scratch.candidateIds;
+                int[] candidateHashes = scratch.candidateHashes;
+                String[] found = scratch.found;
+                for (int c = 0; c < candidates; c++) {
+                    candidateIds[c] = passportIds[positions[c]];
+                    candidateHashes[c] = hashes[positions[c]];
+                }
+                probeRange(candidateIds, candidateHashes, found, 0, candidates, scratch);
+                for (int c = 0; c < candidates; c++) {
+                    names[positions[c]] = found[c];
+                }
+                Arrays.fill(candidateIds, 0, candidates, null);
+                Arrays.fill(found, 0, candidates, null);
+                return;
+            }
+        }
+        probeRange(passportIds, hashes, names, from, to, scratch);
+    }
+
+    private void probeRange(String[] passportIds, int[] hashes, String[] names, int from, int to,
+                            PassengerTable.BatchScratch scratch) {
+        for (int start = from; start < to; start += BATCH_CHUNK) {
+            int chunkStart = start;
+            int chunkEnd = Math.min(start + BATCH_CHUNK, to);
+            read((table, passportId, hashCode) -> {
+                table.getNames(passportIds, hashes, names, chunkStart, chunkEnd, scratch);
+                return null;
+            }, null, 0);
+        }
+    }
+
+    /**
+     * Fork-join task that splits a batched lookup in halves down to
+     * PARALLEL_CHUNK keys.
+     */
+    private final class BatchLookup extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] passportIds;
+        private final int[] hashes;
+        private final String[] names;
+        private final int from;
+        private final int to;
+
+        BatchLookup(String[] passportIds, int[] hashes, String[] names, int from, int to) {
+            this.passportIds = passportIds;
+            this.hashes = hashes;
+            this.names = names;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= PARALLEL_CHUNK) {
+                lookupRange(this.passportIds, this.hashes, this.names, this.from, this.to);
+                return;
+            }
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new BatchLookup(this.passportIds, this.hashes, this.names, this.from, middle),
+                    new BatchLookup(this.passportIds, this.hashes, this.names, middle, this.to));
+        }
     }
 
     /**
@@ -68,8 +342,24 @@ public class SecurityDB extends SecurityDBBase {
      */
     @Override
     public boolean remove(String passportId) {
-        Passenger result = this.passengers.removePassenger(calculateHashCode(passportId));
-        return result != null;
+        int hashCode = calculateHashCode(passportId);
+        long stamp = writeLock();
+        try {
+            String name = this.names != null ? this.passengers.getName(passportId, hashCode) : null;
+            boolean removed = this.passengers.removePassenger(passportId, hashCode);
+            if (removed && this.bloom != null) {
+                bloomRemoved();
+            }
+            if (removed && this.names != null) {
+                this.names.remove(name, passportId);
+            }
+            if (removed && this.stats != null) {
+                this.stats.recordRemoval();
+            }
+            return removed;
+        } finally {
+            unlockWrite(stamp);
+        }
     }
 
     /**
@@ -81,15 +371,294 @@ public class SecurityDB extends SecurityDBBase {
      */
     @Override
     public boolean addPassenger(String name, String passportId) {
+        return tryAddPassenger(name, passportId) == AddResult.INSERTED;
+    }
+
+    /**
+     * Adds a passenger to the hashtable and reports the outcome. A passport
+     * already on record under a different name is reported to the
+     * suspicious-passenger listener as well.
+     *
+     * @param name       passenger's full name
+     * @param passportId passenger's passport ID
+     * @return INSERTED, DUPLICATE, CONFLICTING_NAME or FULL
+     */
+    public AddResult tryAddPassenger(String name, String passportId) {
+        int hashCode = calculateHashCode(passportId);
+        AddResult result;
+        String existingName = null;
+        long stamp = writeLock();
+        try {
+            result = addToTable(name, passportId, hashCode);
+            if (result == AddResult.INSERTED) {
+                indexInserted(name, passportId, hashCode);
+            } else if (result == AddResult.CONFLICTING_NAME) {
+                existingName = this.passengers.getName(passportId, hashCode);
+            }
+        } finally {
+            unlockWrite(stamp);
+        }
+        if (result == AddResult.CONFLICTING_NAME) {
+            this.suspiciousListener.onSuspiciousPassenger(passportId, existingName, name);
+        }
+        return result;
+    }
+
+    /**
+     * Adds every passenger of a manifest. The table is sized once for the
+     * whole manifest, and passengers are hashed and inserted in batches.
+     * Passengers whose passport is already on record are not added and are
+     * reported in the result; conflicting names also go to the
+     * suspicious-passenger listener.
+     *
+     * @param names       passengers' full names
+     * @param passportIds passengers' passport IDs, in the same order
+     * @return outcome counts and rejected passports
+     */
+    public ManifestLoadResult loadManifest(String[] names, String[] passportIds) {
+        if (names.length != passportIds.length) {
+            throw new IllegalArgumentException("Manifest has " + names.length + " names but "
+                    + passportIds.length + " passport IDs");
+        }
+        ManifestLoadResult result = new ManifestLoadResult();
+        reserve(names.length);
+        int[] hashes = new int[LOAD_BATCH];
+        String[] batchNames = new String[LOAD_BATCH];
+        String[] batchIds = new String[LOAD_BATCH];
+        for (int from = 0; from < names.length; from += LOAD_BATCH) {
+            int count = Math.min(LOAD_BATCH, names.length - from);
+            System.arraycopy(names, from, batchNames, 0, count);
+            System.arraycopy(passportIds, from, batchIds, 0, count);
+            loadBatch(batchNames, batchIds, hashes, count, result);
+        }
+        return result;
+    }
+
+    /**
+     * Adds every (name, passport ID) pair produced by the iterator, sizing
+     * the table once for the expected number of passengers.
+     *
+     * @param entries       entries whose key is the name and value the passport ID
+     * @param expectedCount number of passengers the iterator is expected to produce
+     * @return outcome counts and rejected passports
+     * @see #loadManifest(String[], String[])
+     */
+    public ManifestLoadResult loadManifest(Iterator<? extends Map.Entry<String, String>> entries,
+                                           int expectedCount) {
+        ManifestLoadResult result = new ManifestLoadResult();
+        reserve(expectedCount);
+        int[] hashes = new int[LOAD_BATCH];
+        String[] batchNames = new String[LOAD_BATCH];
+        String[] batchIds = new String[LOAD_BATCH];
+        int count = 0;
+        while (entries.hasNext()) {
+            Map.Entry<String, String> passenger = entries.next();
+            batchNames[count] = passenger.getKey();
+            batchIds[count] = passenger.getValue();
+            if (++count == LOAD_BATCH) {
+                loadBatch(batchNames, batchIds, hashes, count, result);
+                count = 0;
+            }
+        }
+        loadBatch(batchNames, batchIds, hashes, count, result);
+        return result;
+    }
+
+    /**
+     * Adds every passenger listed in a plane's manifest file. Each line
+     * holds a passport ID and the passenger's full name separated by the
+     * first comma, e.g. "Asb23f,Rob Bekker". Blank lines and lines starting
+     * with '#' are skipped.
+     *
+     * @param manifestFile UTF-8 manifest file
+     * @return outcome counts and rejected passports
+     * @throws IOException if the file cannot be read or a line has no comma
+     * @see #loadManifest(String[], String[])
+     */
+    public ManifestLoadResult loadManifest(Path manifestFile) throws IOException {
+        ManifestLoadResult result = new ManifestLoadResult();
+        reserve(getNumPassengersPerPlane());
+        int[] hashes = new int[LOAD_BATCH];
+        String[] batchNames = new String[LOAD_BATCH];
+        String[] batchIds = new String[LOAD_BATCH];
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                int comma = trimmed.indexOf(',');
+                if (comma < 0) {
+                    throw new IOException(manifestFile + ":" + lineNumber
+                            + ": expected <passport ID>,<name>");
+                }
+                batchIds[count] = trimmed.substring(0, comma).trim();
+                batchNames[count] = trimmed.substring(comma + 1).trim();
+                if (++count == LOAD_BATCH) {
+                    loadBatch(batchNames, batchIds, hashes, count, result);
+                    count = 0;
+                }
+            }
+        }
+        loadBatch(batchNames, batchIds, hashes, count, result);
+        return result;
+    }
+
+    /* Grows the table once so the given number of extra passengers fit */
+    private void reserve(int extraPassengers) {
+        long stamp = writeLock();
+        try {
+            int oldSize = this.passengers.getSize();
+            long start = this.stats != null ? System.nanoTime() : 0;
+            this.passengers.ensureCapacity(this.passengers.getPassengerCount() + extraPassengers);
+            if (this.stats != null && this.passengers.getSize() != oldSize) {
+                this.stats.recordResize(oldSize, this.passengers.getSize(),
+                        this.passengers.getPassengerCount(), System.nanoTime() - start);
+            }
+            if (this.bloom != null && this.bloom.getCapacity() != this.passengers.getSize()) {
+                rebuildBloom();
+            }
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Hashes the first count passengers of the batch outside the lock, then
+     * inserts them all under a single write lock acquisition. Listeners are
+     * told about conflicts after the lock is released.
+     */
+    private void loadBatch(String[] batchNames, String[] batchIds, int[] hashes, int count,
+                           ManifestLoadResult result) {
+        for (int i = 0; i < count; i++) {
+            hashes[i] = calculateHashCode(batchIds[i]);
+        }
+        String[] existingNames = null;
+        long stamp = writeLock();
+        try {
+            for (int i = 0; i < count; i++) {
+                AddResult added = addToTable(batchNames[i], batchIds[i], hashes[i]);
+                result.record(added, batchIds[i]);
+                if (added == AddResult.INSERTED) {
+                    indexInserted(batchNames[i], batchIds[i], hashes[i]);
+                } else if (added == AddResult.CONFLICTING_NAME) {
+                    if (existingNames == null) {
+                        existingNames = new String[count];
+                    }
+                    existingNames[i] = this.passengers.getName(batchIds[i], hashes[i]);
+                }
+            }
+        } finally {
+            unlockWrite(stamp);
+        }
+        if (existingNames != null) {
+            for (int i = 0; i < count; i++) {
+                if (existingNames[i] != null) {
+                    this.suspiciousListener.onSuspiciousPassenger(batchIds[i],
+                            existingNames[i], batchNames[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the listener that receives suspicious-passenger events. Unless
+     * another listener was configured this is a SuspiciousPassengerQueue.
+     *
+     * @return suspicious-passenger listener
+     */
+    public SuspiciousPassengerListener getSuspiciousPassengerListener() {
+        return this.suspiciousListener;
+    }
+
+    /**
+     * Passes every passenger to the action, in table order, while holding
+     * the read lock when the database is shared.
+     *
+     * @param action receives each passport ID and the name on record
+     */
+    @Override
+    public void forEachPassenger(BiConsumer<? super String, ? super String> action) {
+        if (this.lock == null) {
+            this.passengers.forEachPassenger(action);
+            return;
+        }
+        long stamp = this.lock.readLock();
         try {
-            this.passengers.addPassenger(new Passenger(name, passportId));
-            return true;
-        } catch (Exception e) {
-            System.out.println(e.toString());
-            return false;
+            this.passengers.forEachPassenger(action);
+        } finally {
+            this.lock.unlockRead(stamp);
         }
     }
 
+    /**
+     * Finds the passengers booked under a name, ignoring case. Requires the
+     * name index to be enabled in SecurityDBConfig.
+     *
+     * @param name passenger's full name
+     * @return passport IDs booked under the name, possibly empty
+     */
+    public List<String> findByName(String name) {
+        PassengerNameIndex index = nameIndex();
+        return lockedRead(() -> index.findExact(name));
+    }
+
+    /**
+     * Finds the passengers whose name starts with the prefix, ignoring case,
+     * in name order. Requires the name index to be enabled in
+     * SecurityDBConfig.
+     *
+     * @param prefix start of the passenger's name
+     * @return passport IDs of the matching passengers, possibly empty
+     */
+    public List<String> findByNamePrefix(String prefix) {
+        PassengerNameIndex index = nameIndex();
+        return lockedRead(() -> index.findPrefix(prefix));
+    }
+
+    /**
+     * Returns the operation counters and sampled histograms of this
+     * database. Requires statistics to be enabled in SecurityDBConfig.
+     *
+     * @return statistics, which may be registered as an MXBean
+     */
+    public SecurityDBStats getStatistics() {
+        if (this.stats == null) {
+            throw new IllegalStateException("Statistics not enabled in SecurityDBConfig");
+        }
+        return this.stats;
+    }
+
+    private PassengerNameIndex nameIndex() {
+        if (this.names == null) {
+            throw new IllegalStateException("Name index not enabled in SecurityDBConfig");
+        }
+        return this.names;
+    }
+
+    /**
+     * Empties the database for a new operating day in constant time. The
+     * table keeps its current capacity, and the next day's passengers are
+     * written into the same arrays instead of a freshly built table.
+     */
+    public void rollover() {
+        long stamp = writeLock();
+        try {
+            this.passengers.rollover();
+            if (this.bloom != null) {
+                rebuildBloom();
+            }
+            if (this.names != null) {
+                this.names.clear();
+            }
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
 
 
     /**
@@ -99,7 +668,7 @@ public class SecurityDB extends SecurityDBBase {
      */
     @Override
     public int count() {
-        return this.passengers.getPassengerCount();
+        return read((table, passportId, hashCode) -> table.getPassengerCount(), null, 0);
     }
 
     /**
@@ -110,7 +679,141 @@ public class SecurityDB extends SecurityDBBase {
      */
     @Override
     public int getIndex(String passportId) {
-        return this.passengers.getIndex(calculateHashCode(passportId));
+        return read((table, id, hashCode) -> table.getIndex(id, hashCode),
+                passportId, calculateHashCode(passportId));
+    }
+
+    /**
+     * Adds a passenger to the table. With statistics enabled the add is
+     * timed, so that a resize it triggers is recorded with its duration,
+     * and a sample of new passengers have their probe length measured.
+     * Caller holds the write lock.
+     */
+    private AddResult addToTable(String name, String passportId, int hashCode) {
+        if (this.stats == null) {
+            return this.passengers.addPassenger(name, passportId, hashCode);
+        }
+        int oldSize = this.passengers.getSize();
+        long start = System.nanoTime();
+        AddResult result = this.passengers.addPassenger(name, passportId, hashCode);
+        long elapsed = System.nanoTime() - start;
+        if (this.passengers.getSize() != oldSize) {
+            this.stats.recordResize(oldSize, this.passengers.getSize(),
+                    this.passengers.getPassengerCount(), elapsed);
+        }
+        this.stats.recordAdd(result);
+        if (result == AddResult.INSERTED && this.stats.shouldSample()) {
+            this.stats.recordInsertProbe(this.passengers.getProbeLength(passportId, hashCode));
+        }
+        return result;
+    }
+
+    /* Records a new passenger in the Bloom filter and name index, if enabled */
+    private void indexInserted(String name, String passportId, int hashCode) {
+        if (this.bloom != null) {
+            bloomInserted(hashCode);
+        }
+        if (this.names != null) {
+            this.names.add(name, passportId);
+        }
+    }
+
+    /*
+     * Adds a new passenger's hash to the filter. If the insert made the
+     * table grow, or removed passengers' bits have saturated the filter, it
+     * is rebuilt for the table's new size instead. Caller holds the write
+     * lock.
+     */
+    private void bloomInserted(int hashCode) {
+        PassportBloomFilter filter = this.bloom;
+        if (filter.getCapacity() != this.passengers.getSize()
+                || filter.getInsertions() >= filter.getCapacity()) {
+            rebuildBloom();
+        } else {
+            filter.add(hashCode);
+        }
+    }
+
+    /* Rebuilds the filter once removals make up half of its keys */
+    private void bloomRemoved() {
+        this.bloomRemovals++;
+        if (this.bloomRemovals > BLOOM_MIN_REBUILD
+                && this.bloomRemovals * 2 > this.bloom.getInsertions()) {
+            rebuildBloom();
+        }
+    }
+
+    /* Builds a filter of the passengers on record, sized for the table */
+    private void rebuildBloom() {
+        PassportBloomFilter filter = new PassportBloomFilter(this.passengers.getSize());
+        this.passengers.forEachHash(filter::add);
+        this.bloomRemovals = 0;
+        this.bloom = filter;
+    }
+
+    /**
+     * A read-only query against the passenger table.
+     */
+    private interface TableRead<T> {
+        T apply(PassengerTable table, String passportId, int hashCode);
+    }
+
+    /**
+     * Runs a read-only query. In optimistic-read mode the query runs without
+     * taking the lock or writing to shared memory, and is retried if a
+     * writer held the lock at any point meanwhile; a query that sees a
+     * half-written table may throw, which counts as a failed attempt. Only
+     * after repeated failures does the reader wait for the read lock.
+     */
+    private <T> T read(TableRead<T> query, String passportId, int hashCode) {
+        if (this.lock == null) {
+            return query.apply(this.passengers, passportId, hashCode);
+        }
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = this.lock.tryOptimisticRead();
+            if (stamp != 0) {
+                try {
+                    T result = query.apply(this.passengers, passportId, hashCode);
+                    if (this.lock.validate(stamp)) {
+                        return result;
+                    }
+                } catch (RuntimeException e) {
+                    if (this.lock.validate(stamp)) {
+                        throw e;
+                    }
+                }
+            }
+            Thread.onSpinWait();
+        }
+        long stamp = this.lock.readLock();
+        try {
+            return query.apply(this.passengers, passportId, hashCode);
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /* Runs a query that must not see a writer mid-update under the full read lock */
+    private <T> T lockedRead(Supplier<T> query) {
+        if (this.lock == null) {
+            return query.get();
+        }
+        long stamp = this.lock.readLock();
+        try {
+            return query.get();
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    private long writeLock() {
+        return this.lock == null ? 0 : this.lock.writeLock();
+    }
+
+    private void unlockWrite(long stamp) {
+        if (this.lock != null) {
+            this.lock.unlockWrite(stamp);
+        }
     }
 
     /*
@@ -141,182 +844,16 @@ public class SecurityDB extends SecurityDBBase {
 //        assert db.contains("Asb23f");
 //
 //        // hashcodes
-//        assert db.calculateHashCode("Asb23f") == 1717;
+//        assert PassportHash.LEGACY.hash("Asb23f") == 1717;
 //
 //        // suspicious
 //        db = new SecurityDB(3, 2);
 //        db.addPassenger("Rob Bekker", "Asb23f");
-//        db.addPassenger("Robert Bekker", "Asb23f");
-//        // Should print a warning to stderr
+//        assert db.tryAddPassenger("Robert Bekker", "Asb23f") == AddResult.CONFLICTING_NAME;
+//        assert ((SuspiciousPassengerQueue) db.getSuspiciousPassengerListener()).size() == 1;
 //
 //        System.out.println("Test success!");
 //    }
 }
 
 /* Add any additional helper classes here */
-class SecHashTable {
-
-    private int size;
-    private int maxCapacity;
-    private Passenger[] array;
-    private int passengerCount;
-
-    public SecHashTable (int potentialSize, int maxCapacity) {
-        this.maxCapacity = maxCapacity;
-        this.size = setSize(potentialSize);
-        this.array = new Passenger[this.size];
-        this.passengerCount = 0;
-    }
-
-    public int getSize() {
-        return this.size;
-    }
-
-    public int getPassengerCount() {
-        return this.passengerCount;
-    }
-
-    public int getIndex (int hashCode) {
-        int slot = hashCode % this.size;
-        Passenger temp = this.array[slot];
-        if (temp == null || temp.hashCode() == hashCode) {
-            return slot;
-        } else {
-            int newSlot = (slot + 1) % this.size;
-            Passenger newTemp = this.array[newSlot];
-
-            for (int i = 0; i < this.size; i++) {
-                if (newTemp.hashCode() == hashCode) {
-                    return newSlot;
-                } else {
-                    newSlot = (newSlot + 1) % this.size;
-                    newTemp = this.array[newSlot];
-                }
-            }
-        }
-        return this.maxCapacity + 1000;
-    }
-
-    public Passenger getPassenger (int hashCode) {
-        int index = getIndex(hashCode);
-        if (index == this.maxCapacity + 1000) {
-            return null;
-        } else {
-            return this.array[index];
-        }
-    }
-
-    public Passenger removePassenger (int hashCode) {
-        int index = getIndex(hashCode);
-        if (index == this.maxCapacity + 1000) {
-            return null;
-        } else {
-            Passenger result = this.array[index];
-            this.array[index] = null;
-            this.passengerCount -= 1;
-            return result;
-        }
-    }
-
-    public void addPassenger (Passenger passenger) throws Exception  {
-        if (this.passengerCount == this.size) {
-            tableResize();
-        }
-        int hashCode = passenger.hashCode();
-        int slot = hashCode % this.size;
-        try {
-            if (getPassenger(hashCode).hashCode() == hashCode) {
-                throw new Exception("Passenger with this passportID already exist!");
-            }
-        } catch (NullPointerException ignored) {
-            ;
-        }
-
-        if (this.array[slot] == null) {
-            this.array[slot] = passenger;
-        } else {
-            int newSlot = (slot + 1) % this.size;
-            for (int i = 0; i < this.size; i++) {
-                if (this.array[newSlot] == null) {
-                    this.array[newSlot] = passenger;
-                    break;
-                } else {
-                    newSlot = (newSlot + 1) % this.size;
-                }
-            }
-        }
-        this.passengerCount += 1;
-    }
-
-
-    private void tableResize () throws Exception {
-        if (this.size == this.maxCapacity) {
-            throw new Exception("The table could no longer be expanded!");
-        }
-        int newSize = setSize(this.size + 1);
-        Passenger[] newArray = new Passenger[newSize];
-        System.arraycopy(this.array, 0, newArray, 0, this.array.length);
-        this.array = newArray;
-        this.size = newSize;
-    }
-
-    private boolean checkPrime (int number) {
-        boolean prime = true;
-        for (int i = 2; i <= number / 2; i++) {
-            if (number % i == 0) {
-                prime = false;
-                break;
-            }
-        }
-        return prime;
-    }
-
-
-    private int setSize (int potentialSize) {
-        int temp = potentialSize + 1;
-        boolean prime = checkPrime(temp);
-
-        if (prime) {
-            return temp;
-        } else {
-            for (int i = temp + 1; i < this.maxCapacity; i++) {
-                if (checkPrime(i)) {
-                    return i;
-                }
-            }
-            return this.maxCapacity;
-        }
-    }
-}
-
-class Passenger {
-    private String name;
-    private String passportID;
-
-    public Passenger (String name, String passportID) {
-        this.name = name;
-        this.passportID = passportID;
-    }
-
-    @Override
-    public int hashCode() {
-        int result = 0;
-        char[] passport = this.passportID.toCharArray();
-        int temp = 0;
-        int count = 0;
-        for (char i : passport) {
-            temp = temp + (int) i;
-            result = result + temp;
-            count ++;
-        }
-        return result + count;
-    }
-
-    public String getName() {
-        return this.name;
-    }
-
-    public String getPassportID() {
-        return this.passportID;
-    }
-}
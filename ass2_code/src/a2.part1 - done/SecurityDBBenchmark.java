@@ -0,0 +1,1016 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Command-line reports and benchmarks for the SecurityDB hash tables.
+ *
+ * Usage: java SecurityDBBenchmark &lt;mode&gt; [passengers] [engine]
+ *
+ * Modes:
+ *   hash-report  collision and probe-length report for each PassportHash
+ *                over synthetic passport corpora
+ *   gc           garbage collection cost of the on-heap, compact and
+ *                off-heap databases under a load followed by churn
+ *   stress       multi-threaded correctness check of ConcurrentSecurityDB
+ *   concurrent   ConcurrentSecurityDB throughput at 1 to 32 threads
+ *   optimistic   lookup throughput of an optimistic-read SecurityDB under a
+ *                concurrent writer, against an unsynchronized SecurityDB
+ *   load         loading a day's manifest one addPassenger at a time
+ *                against the bulk loadManifest API
+ *   snapshot     restart time of refilling a SecurityDB against opening a
+ *                memory-mapped snapshot
+ *   journal      add throughput of a JournaledSecurityDB with group commit
+ *                and with an fsync per add, against in-memory only
+ *   bloom        lookup latency of absent and present passports with and
+ *                without the Bloom filter, before and after churn
+ *   batch        per-key cost of getAll on boarding groups against a loop of
+ *                get, and of one large getAll with and without a pool
+ *   cuckoo       lookup latency distribution and insert cost of the cuckoo
+ *                engine against the linear-probing table
+ *   suite        ns/op of add, get hit and miss, contains, remove and churn
+ *                for every engine over table sizes, load factors and
+ *                corpora, single-threaded and, for the thread-safe engines,
+ *                multi-threaded; the optional engine argument restricts the
+ *                run to one Engine
+ */
+public class SecurityDBBenchmark {
+
+    /** Seed shared by every corpus so runs are comparable */
+    private static final long SEED = 7505L;
+
+    private static final String ALPHANUMERIC =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    /**
+     * Shapes of synthetic passport ID corpora.
+     */
+    enum Corpus {
+        /* Uniformly random alphanumeric IDs of 6 to 9 characters */
+        RANDOM,
+        /* Country-style prefix followed by a sequential number, e.g. AUS0001234 */
+        SHARED_PREFIX,
+        /* IDs built so that they all share a handful of LEGACY hash codes */
+        ADVERSARIAL;
+
+        String[] generate(int count, long seed) {
+            Random random = new Random(seed);
+            Set<String> ids = new LinkedHashSet<>();
+            switch (this) {
+                case RANDOM:
+                    while (ids.size() < count) {
+                        ids.add(randomId(random, 6 + random.nextInt(4)));
+                    }
+                    break;
+                case SHARED_PREFIX:
+                    String[] prefixes = {"AUS", "NZL", "GBR", "USA"};
+                    for (int i = 0; ids.size() < count; i++) {
+                        ids.add(prefixes[i % prefixes.length] + String.format("%07d", i));
+                    }
+                    break;
+                case ADVERSARIAL:
+                    while (ids.size() < count) {
+                        addLegacyCollisions(random, ids, count);
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException(name());
+            }
+            return ids.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * Database engines covered by the suite.
+     */
+    enum Engine {
+        /* SecurityDB over SecHashTable */
+        HEAP,
+        /* SecurityDB over CompactPassengerTable */
+        COMPACT,
+        /* SecurityDB over CuckooPassengerTable */
+        CUCKOO,
+        /* OffHeapSecurityDB on direct ByteBuffers */
+        OFF_HEAP,
+        /* SecurityDB over SecHashTable with optimistic reads */
+        OPTIMISTIC,
+        /* Lock-striped ConcurrentSecurityDB */
+        CONCURRENT;
+
+        SecurityDBBase create(int passengers, double loadFactor, PassportHash hash) {
+            SecurityDBConfig config = new SecurityDBConfig().loadFactor(loadFactor)
+                    .hashStrategy(hash);
+            switch (this) {
+                case HEAP:
+                    return new SecurityDB(1, passengers, config);
+                case COMPACT:
+                    return new SecurityDB(1, passengers, config.compactKeys(true));
+                case CUCKOO:
+                    return new SecurityDB(1, passengers, config.cuckooHashing(true));
+                case OFF_HEAP:
+                    return new OffHeapSecurityDB(1, passengers, config);
+                case OPTIMISTIC:
+                    return new SecurityDB(1, passengers, config.optimisticReads(true));
+                case CONCURRENT:
+                    return new ConcurrentSecurityDB(1, passengers, config, 16);
+                default:
+                    throw new IllegalStateException(name());
+            }
+        }
+
+        boolean isThreadSafe() {
+            return this == OPTIMISTIC || this == CONCURRENT;
+        }
+    }
+
+    public static void main(String[] args) {
+        String mode = args.length > 0 ? args[0] : "hash-report";
+        int passengers = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        switch (mode) {
+            case "hash-report":
+                hashReport(passengers);
+                break;
+            case "gc":
+                gcReport(passengers);
+                break;
+            case "stress":
+                concurrentStress(passengers);
+                break;
+            case "concurrent":
+                concurrentThroughput(passengers);
+                break;
+            case "optimistic":
+                optimisticThroughput(passengers);
+                break;
+            case "load":
+                loadReport(passengers);
+                break;
+            case "snapshot":
+                snapshotReport(passengers);
+                break;
+            case "journal":
+                journalReport(passengers);
+                break;
+            case "bloom":
+                bloomReport(passengers);
+                break;
+            case "batch":
+                batchReport(passengers);
+                break;
+            case "cuckoo":
+                cuckooReport(passengers);
+                break;
+            case "suite":
+                suite(passengers, args.length > 2 ? Engine.valueOf(args[2]) : null);
+                break;
+            default:
+                System.err.println("Unknown mode: " + mode);
+                System.exit(1);
+        }
+    }
+
+    /**
+     * Loads every corpus into a table with each hash strategy and prints the
+     * number of full 32-bit hash collisions together with the mean, p99 and
+     * maximum probe length of a successful lookup.
+     */
+    static void hashReport(int passengers) {
+        Map<String, PassportHash> strategies = new LinkedHashMap<>();
+        strategies.put("LEGACY", PassportHash.LEGACY);
+        strategies.put("MURMUR3", PassportHash.MURMUR3);
+
+        System.out.printf("%-14s %-8s %10s %8s %8s %8s%n",
+                "corpus", "hash", "collisions", "mean", "p99", "max");
+        for (Corpus corpus : Corpus.values()) {
+            String[] ids = corpus.generate(passengers, SEED);
+            for (Map.Entry<String, PassportHash> strategy : strategies.entrySet()) {
+                PassportHash hash = strategy.getValue();
+                SecHashTable table = new SecHashTable(ids.length,
+                        SecHashTable.DEFAULT_LOAD_FACTOR);
+                Map<Integer, Integer> seen = new HashMap<>();
+                int collisions = 0;
+                for (String id : ids) {
+                    int code = hash.hash(id);
+                    if (seen.merge(code, 1, Integer::sum) > 1) {
+                        collisions++;
+                    }
+                    table.addPassenger("Passenger " + id, id, code);
+                }
+                int[] probes = new int[ids.length];
+                long total = 0;
+                for (int i = 0; i < ids.length; i++) {
+                    probes[i] = table.getProbeLength(ids[i], hash.hash(ids[i]));
+                    total += probes[i];
+                }
+                Arrays.sort(probes);
+                System.out.printf("%-14s %-8s %10d %8.2f %8d %8d%n", corpus, strategy.getKey(),
+                        collisions, (double) total / ids.length,
+                        probes[(int) (probes.length * 0.99)], probes[probes.length - 1]);
+            }
+        }
+    }
+
+    /**
+     * Loads the given number of passengers into each database, then removes
+     * and re-adds a passenger the same number of times again. Prints the
+     * wall time, the collections and collection time spent, and the heap
+     * still in use after a full collection while the database is alive.
+     */
+    static void gcReport(int passengers) {
+        String[] ids = Corpus.RANDOM.generate(passengers, SEED);
+        Map<String, Supplier<SecurityDBBase>> engines = new LinkedHashMap<>();
+        engines.put("heap", () -> new SecurityDB(1, passengers));
+        engines.put("compact", () -> new SecurityDB(1, passengers,
+                new SecurityDBConfig().compactKeys(true)));
+        engines.put("off-heap", () -> new OffHeapSecurityDB(1, passengers));
+
+        System.out.printf("%-10s %10s %8s %10s %12s%n",
+                "engine", "time(ms)", "gcs", "gc(ms)", "heap(MiB)");
+        for (Map.Entry<String, Supplier<SecurityDBBase>> engine : engines.entrySet()) {
+            System.gc();
+            long gcCount = gcCount();
+            long gcTime = gcTime();
+            long start = System.nanoTime();
+            SecurityDBBase db = engine.getValue().get();
+            for (String id : ids) {
+                db.addPassenger("Passenger " + id, id);
+            }
+            Random random = new Random(SEED);
+            for (int i = 0; i < passengers; i++) {
+                String id = ids[random.nextInt(ids.length)];
+                db.remove(id);
+                db.addPassenger("Passenger " + id, id);
+            }
+            long elapsed = System.nanoTime() - start;
+            long collections = gcCount() - gcCount;
+            long collectionTime = gcTime() - gcTime;
+            System.gc();
+            Runtime runtime = Runtime.getRuntime();
+            long heap = runtime.totalMemory() - runtime.freeMemory();
+            System.out.printf("%-10s %10d %8d %10d %12.1f%n", engine.getKey(),
+                    elapsed / 1_000_000, collections, collectionTime,
+                    heap / (1024.0 * 1024.0));
+            if (db.count() != ids.length) {
+                throw new IllegalStateException(engine.getKey() + " lost passengers");
+            }
+            if (db instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) db).close();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs eight threads against one ConcurrentSecurityDB. Half of the
+     * passengers are loaded up front and never touched, and every lookup of
+     * them must succeed. Each thread also owns a private range of passports
+     * that it adds, removes and looks up, checking each answer against its
+     * own record of that range.
+     */
+    static void concurrentStress(int passengers) {
+        int threads = 8;
+        String[] ids = Corpus.RANDOM.generate(passengers, SEED);
+        int stable = ids.length / 2;
+        ConcurrentSecurityDB db = new ConcurrentSecurityDB(1, 16,
+                new SecurityDBConfig(), threads);
+        for (int i = 0; i < stable; i++) {
+            db.addPassenger("Passenger " + ids[i], ids[i]);
+        }
+        int perThread = (ids.length - stable) / threads;
+        AtomicLong failures = new AtomicLong();
+        runThreads(threads, t -> {
+            Random random = new Random(SEED + t);
+            int from = stable + t * perThread;
+            boolean[] present = new boolean[perThread];
+            for (int op = 0; op < 500_000; op++) {
+                int i = random.nextInt(perThread);
+                String id = ids[from + i];
+                switch (random.nextInt(4)) {
+                    case 0:
+                        if (db.addPassenger("Passenger " + id, id) == present[i]) {
+                            failures.incrementAndGet();
+                        }
+                        present[i] = true;
+                        break;
+                    case 1:
+                        if (db.remove(id) != present[i]) {
+                            failures.incrementAndGet();
+                        }
+                        present[i] = false;
+                        break;
+                    case 2:
+                        if ((db.get(id) != null) != present[i]) {
+                            failures.incrementAndGet();
+                        }
+                        break;
+                    default:
+                        String other = ids[random.nextInt(stable)];
+                        if (!("Passenger " + other).equals(db.get(other))) {
+                            failures.incrementAndGet();
+                        }
+                }
+            }
+        });
+        System.out.printf("threads=%d passengers=%d segments=%d failures=%d%n",
+                threads, db.count(), db.getSegmentCount(), failures.get());
+        if (failures.get() != 0) {
+            throw new IllegalStateException("ConcurrentSecurityDB stress test failed");
+        }
+    }
+
+    /**
+     * Measures operations per second of a read-mostly workload (90% get,
+     * 5% add, 5% remove) over a preloaded ConcurrentSecurityDB.
+     */
+    static void concurrentThroughput(int passengers) {
+        String[] ids = Corpus.RANDOM.generate(passengers, SEED);
+        System.out.printf("%8s %14s%n", "threads", "ops/s");
+        for (int threads = 1; threads <= 32; threads *= 2) {
+            ConcurrentSecurityDB db = new ConcurrentSecurityDB(1, passengers,
+                    new SecurityDBConfig(), threads);
+            for (String id : ids) {
+                db.addPassenger("Passenger " + id, id);
+            }
+            int opsPerThread = 2_000_000;
+            long start = System.nanoTime();
+            runThreads(threads, t -> {
+                Random random = new Random(SEED + t);
+                int sink = 0;
+                for (int op = 0; op < opsPerThread; op++) {
+                    String id = ids[random.nextInt(ids.length)];
+                    int kind = random.nextInt(20);
+                    if (kind == 0) {
+                        db.addPassenger("Passenger " + id, id);
+                    } else if (kind == 1) {
+                        db.remove(id);
+                    } else if (db.get(id) != null) {
+                        sink++;
+                    }
+                }
+                BLACKHOLE.addAndGet(sink);
+            });
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%8d %14.0f%n", threads, threads * (double) opsPerThread / seconds);
+        }
+    }
+
+    /**
+     * Measures lookups per second with 1 to 8 reader threads. The baseline
+     * is an unsynchronized SecurityDB with no writer; the optimistic-read
+     * SecurityDB runs the same readers while one extra thread removes and
+     * re-adds a passenger after every hundred lookups of a reader.
+     */
+    static void optimisticThroughput(int passengers) {
+        String[] ids = Corpus.RANDOM.generate(passengers, SEED);
+        System.out.printf("%8s %16s %16s%n", "readers", "plain get/s", "optimistic get/s");
+        for (int readerCount = 1; readerCount <= 8; readerCount *= 2) {
+            int readers = readerCount;
+            double[] rates = new double[2];
+            for (int mode = 0; mode < 2; mode++) {
+                boolean optimistic = mode == 1;
+                SecurityDB db = new SecurityDB(1, passengers,
+                        new SecurityDBConfig().optimisticReads(optimistic));
+                for (String id : ids) {
+                    db.addPassenger("Passenger " + id, id);
+                }
+                int lookups = 2_000_000;
+                int threads = optimistic ? readers + 1 : readers;
+                AtomicLong done = new AtomicLong();
+                long start = System.nanoTime();
+                runThreads(threads, t -> {
+                    Random random = new Random(SEED + t);
+                    if (t == readers) {
+                        while (done.get() < readers) {
+                            String id = ids[random.nextInt(ids.length)];
+                            db.remove(id);
+                            db.addPassenger("Passenger " + id, id);
+                            LockSupport.parkNanos(100_000);
+                        }
+                        return;
+                    }
+                    int sink = 0;
+                    for (int op = 0; op < lookups; op++) {
+                        if (db.get(ids[random.nextInt(ids.length)]) != null) {
+                            sink++;
+                        }
+                    }
+                    BLACKHOLE.addAndGet(sink);
+                    done.incrementAndGet();
+                });
+                rates[mode] = readers * (double) lookups / ((System.nanoTime() - start) / 1e9);
+            }
+            System.out.printf("%8d %16.0f %16.0f%n", readers, rates[0], rates[1]);
+        }
+    }
+
+    /**
+     * Loads the same manifest, with 1% repeated passports, into a database
+     * created for a single small plane: passenger by passenger, then with
+     * loadManifest from arrays and from a manifest file. Prints the best of
+     * five runs of each.
+     */
+    static void loadReport(int passengers) {
+        String[] unique = Corpus.RANDOM.generate(passengers, SEED);
+        String[] ids = new String[passengers + passengers / 100];
+        String[] names = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = unique[i < passengers ? i : i % 97];
+            names[i] = "Passenger " + ids[i];
+        }
+        Path file;
+        try {
+            file = Files.createTempFile("manifest", ".csv");
+            file.toFile().deleteOnExit();
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                for (int i = 0; i < ids.length; i++) {
+                    writer.write(ids[i] + "," + names[i]);
+                    writer.newLine();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Map<String, Consumer<SecurityDB>> loaders = new LinkedHashMap<>();
+        loaders.put("addPassenger", db -> {
+            for (int i = 0; i < ids.length; i++) {
+                db.addPassenger(names[i], ids[i]);
+            }
+        });
+        loaders.put("loadManifest", db -> db.loadManifest(names, ids));
+        loaders.put("loadManifest(file)", db -> {
+            try {
+                db.loadManifest(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        System.out.printf("%-20s %10s %10s%n", "loader", "best(ms)", "count");
+        for (Map.Entry<String, Consumer<SecurityDB>> loader : loaders.entrySet()) {
+            long best = Long.MAX_VALUE;
+            int count = 0;
+            for (int run = 0; run < 5; run++) {
+                SecurityDB db = new SecurityDB(1, 16);
+                long start = System.nanoTime();
+                loader.getValue().accept(db);
+                best = Math.min(best, System.nanoTime() - start);
+                count = db.count();
+            }
+            System.out.printf("%-20s %10.1f %10d%n", loader.getKey(), best / 1e6, count);
+        }
+    }
+
+    /**
+     * Writes a snapshot of a full database, then compares the time until a
+     * restarted process answers its first lookups: refilling a SecurityDB
+     * with loadManifest, against mapping the snapshot with MappedSecurityDB.
+     * Prints the best of five runs of each.
+     */
+    static void snapshotReport(int passengers) {
+        String[] ids = Corpus.RANDOM.generate(passengers, SEED);
+        String[] names = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            names[i] = "Passenger " + ids[i];
+        }
+        SecurityDB source = new SecurityDB(1, 16);
+        source.loadManifest(names, ids);
+        Path file;
+        long writeStart = System.nanoTime();
+        try {
+            file = Files.createTempFile("securitydb", ".snapshot");
+            file.toFile().deleteOnExit();
+            SecurityDBSnapshot.write(source, file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.out.printf("snapshot written in %.1f ms (%d bytes)%n",
+                (System.nanoTime() - writeStart) / 1e6, file.toFile().length());
+
+        Random random = new Random(SEED);
+        String[] probes = new String[1000];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = ids[random.nextInt(ids.length)];
+        }
+        Map<String, Supplier<SecurityDBBase>> restarts = new LinkedHashMap<>();
+        restarts.put("loadManifest", () -> {
+            SecurityDB db = new SecurityDB(1, 16);
+            db.loadManifest(names, ids);
+            return db;
+        });
+        restarts.put("MappedSecurityDB", () -> {
+            try {
+                return MappedSecurityDB.open(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        System.out.printf("%-20s %14s %10s%n", "restart", "to-serve(ms)", "count");
+        for (Map.Entry<String, Supplier<SecurityDBBase>> restart : restarts.entrySet()) {
+            long best = Long.MAX_VALUE;
+            int count = 0;
+            for (int run = 0; run < 5; run++) {
+                long start = System.nanoTime();
+                SecurityDBBase db = restart.getValue().get();
+                for (String probe : probes) {
+                    BLACKHOLE.addAndGet(db.get(probe).length());
+                }
+                best = Math.min(best, System.nanoTime() - start);
+                count = db.count();
+                if (db instanceof MappedSecurityDB) {
+                    ((MappedSecurityDB) db).close();
+                }
+            }
+            System.out.printf("%-20s %14.2f %10d%n", restart.getKey(), best / 1e6, count);
+        }
+    }
+
+    /**
+     * Adds passengers to an in-memory SecurityDB and to journaled databases
+     * with different group-commit settings, and prints adds per second. The
+     * fsync-per-add run is capped at 2,000 adds. Each journaled run ends
+     * with a sync, so every add it counts is on disk.
+     */
+    static void journalReport(int passengers) {
+        String[] ids = Corpus.RANDOM.generate(passengers, SEED);
+        Map<String, SecurityDBConfig> configs = new LinkedHashMap<>();
+        configs.put("in-memory", null);
+        configs.put("batch 256, 10 ms", new SecurityDBConfig()
+                .journalBatchSize(256).journalFlushInterval(10));
+        configs.put("batch 4096, 50 ms", new SecurityDBConfig()
+                .journalBatchSize(4096).journalFlushInterval(50));
+        configs.put("fsync per add", new SecurityDBConfig()
+                .journalBatchSize(1).journalFlushInterval(0));
+        System.out.printf("%-20s %10s %14s%n", "journal", "adds", "adds/s");
+        for (Map.Entry<String, SecurityDBConfig> config : configs.entrySet()) {
+            int adds = config.getValue() != null && config.getValue().getJournalBatchSize() == 1
+                    ? Math.min(passengers, 2_000) : passengers;
+            try {
+                Path journal = Files.createTempFile("securitydb", ".journal");
+                long start = System.nanoTime();
+                SecurityDBBase db = config.getValue() == null ? new SecurityDB(1, 16)
+                        : new JournaledSecurityDB(new SecurityDB(1, 16), journal, config.getValue());
+                for (int i = 0; i < adds; i++) {
+                    db.addPassenger("Passenger " + ids[i], ids[i]);
+                }
+                if (db instanceof JournaledSecurityDB) {
+                    ((JournaledSecurityDB) db).sync();
+                    ((JournaledSecurityDB) db).close();
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%-20s %10d %14.0f%n", config.getKey(), adds, adds / seconds);
+                Files.delete(journal);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Fills a database with and without the Bloom filter and times lookups
+     * of passports that are absent and present, then removes half of the
+     * passengers and times the absent lookups again. Prints the best of five
+     * passes in nanoseconds per lookup.
+     */
+    static void bloomReport(int passengers) {
+        String[] ids = Corpus.RANDOM.generate(passengers * 2, SEED);
+        String[] present = Arrays.copyOfRange(ids, 0, passengers);
+        String[] absent = Arrays.copyOfRange(ids, passengers, ids.length);
+        String[] names = new String[passengers];
+        Arrays.fill(names, "Passenger");
+        System.out.printf("%-8s %12s %12s %16s%n", "filter", "absent(ns)", "present(ns)",
+                "absent-churn(ns)");
+        for (boolean filter : new boolean[]{false, true}) {
+            SecurityDB db = new SecurityDB(1, 16, new SecurityDBConfig().bloomFilter(filter));
+            db.loadManifest(names, present);
+            double miss = bestLookupNanos(db, absent);
+            double hit = bestLookupNanos(db, present);
+            for (int i = 0; i < passengers; i += 2) {
+                db.remove(present[i]);
+            }
+            double churned = bestLookupNanos(db, absent);
+            System.out.printf("%-8s %12.1f %12.1f %16.1f%n", filter ? "bloom" : "none",
+                    miss, hit, churned);
+        }
+    }
+
+    /**
+     * Looks up boarding groups of 48 passports, three quarters of them on
+     * record, one get at a time and with getAll, on the heap and compact
+     * engines. Then looks up every passport in one batch, on the calling
+     * thread and split across the common pool. Prints the best of five
+     * passes in nanoseconds per key.
+     */
+    static void batchReport(int passengers) {
+        String[] ids = Corpus.RANDOM.generate(passengers + passengers / 3, SEED);
+        String[] present = Arrays.copyOfRange(ids, 0, passengers);
+        String[] names = new String[passengers];
+        Arrays.fill(names, "Passenger");
+        Random random = new Random(SEED);
+        String[][] groups = new String[Math.max(passengers / 48, 1)][48];
+        for (String[] group : groups) {
+            for (int i = 0; i < group.length; i++) {
+                group[i] = ids[random.nextInt(ids.length)];
+            }
+        }
+        System.out.printf("%-8s %-22s %12s%n", "engine", "lookup", "ns/key");
+        for (boolean compact : new boolean[]{false, true}) {
+            String engine = compact ? "compact" : "heap";
+            SecurityDB db = new SecurityDB(1, 16, new SecurityDBConfig().compactKeys(compact));
+            db.loadManifest(names, present);
+            Map<String, Runnable> lookups = new LinkedHashMap<>();
+            lookups.put("get x48", () -> {
+                for (String[] group : groups) {
+                    for (String id : group) {
+                        String name = db.get(id);
+                        BLACKHOLE.addAndGet(name == null ? 0 : 1);
+                    }
+                }
+            });
+            lookups.put("getAll(48)", () -> {
+                for (String[] group : groups) {
+                    BLACKHOLE.addAndGet(db.getAll(group).length);
+                }
+            });
+            lookups.put("getAll(all)", () -> BLACKHOLE.addAndGet(db.getAll(ids).length));
+            lookups.put("getAll(all, pool)", () ->
+                    BLACKHOLE.addAndGet(db.getAll(ids, ForkJoinPool.commonPool()).length));
+            for (Map.Entry<String, Runnable> lookup : lookups.entrySet()) {
+                int keys = lookup.getKey().endsWith("(48)") || lookup.getKey().endsWith("x48")
+                        ? groups.length * 48 : ids.length;
+                long best = Long.MAX_VALUE;
+                for (int run = 0; run < 5; run++) {
+                    long start = System.nanoTime();
+                    lookup.getValue().run();
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                System.out.printf("%-8s %-22s %12.1f%n", engine, lookup.getKey(),
+                        (double) best / keys);
+            }
+        }
+    }
+
+    /**
+     * Fills the linear-probing and cuckoo engines at several load factors,
+     * timing the inserts, then times every successful lookup on its own
+     * and prints the mean, p99, p99.99 and maximum in nanoseconds. Single
+     * timings include the clock's own overhead, so the tail is what to
+     * compare rather than the absolute mean.
+     */
+    static void cuckooReport(int passengers) {
+        System.out.printf("%-14s %-7s %5s %12s %9s %9s %9s %9s%n", "corpus", "engine", "load",
+                "insert(ns)", "mean", "p99", "p99.99", "max");
+        for (Corpus corpus : new Corpus[]{Corpus.RANDOM, Corpus.SHARED_PREFIX}) {
+            String[] ids = corpus.generate(passengers, SEED);
+            for (double loadFactor : new double[]{0.5, 0.75, 0.9}) {
+                for (boolean cuckoo : new boolean[]{false, true}) {
+                    SecurityDB db = new SecurityDB(1, 16, new SecurityDBConfig()
+                            .loadFactor(loadFactor).cuckooHashing(cuckoo));
+                    long start = System.nanoTime();
+                    for (String id : ids) {
+                        db.addPassenger("Passenger", id);
+                    }
+                    double insert = (double) (System.nanoTime() - start) / ids.length;
+                    long[] latencies = new long[ids.length];
+                    for (int run = 0; run < 3; run++) {
+                        for (int i = 0; i < ids.length; i++) {
+                            long before = System.nanoTime();
+                            String name = db.get(ids[i]);
+                            latencies[i] = System.nanoTime() - before;
+                            BLACKHOLE.addAndGet(name.length());
+                        }
+                    }
+                    Arrays.sort(latencies);
+                    System.out.printf("%-14s %-7s %5.2f %12.1f %9.1f %9d %9d %9d%n",
+                            corpus, cuckoo ? "cuckoo" : "linear", loadFactor, insert,
+                            Arrays.stream(latencies).average().orElse(0),
+                            latencies[(int) (latencies.length * 0.99)],
+                            latencies[(int) (latencies.length * 0.9999)],
+                            latencies[latencies.length - 1]);
+                }
+            }
+        }
+    }
+
+    /* Largest ADVERSARIAL corpus the suite runs, as its lookups cost O(n) */
+    private static final int MAX_ADVERSARIAL = 2_000;
+
+    /* Untimed passes before the timed ones of each suite measurement */
+    private static final int WARMUP_PASSES = 2;
+    private static final int MEASURED_PASSES = 5;
+
+    /**
+     * Benchmark suite in the manner of JMH's average-time mode: every
+     * measurement runs warm-up passes, then timed passes, and prints the
+     * mean ns/op with its standard deviation across passes.
+     *
+     * Each engine is measured at a tenth of the given passengers and at
+     * the full number, at load factors 0.5, 0.75 and 0.9, over RANDOM and
+     * SHARED_PREFIX IDs hashed with the default hash, and ADVERSARIAL IDs
+     * hashed with LEGACY, the hash they collide under. Every passenger of
+     * an ADVERSARIAL corpus shares its hash with hundreds of others, so it
+     * only runs at sizes up to MAX_ADVERSARIAL. Tables start at 16
+     * buckets per plane, so add includes growth. The operations are add
+     * into an empty table, get of present and absent passports, contains
+     * of a half-present mix, remove of every passenger, and churn: half
+     * gets, a quarter adds and a quarter removes over twice the IDs. The
+     * thread-safe engines also run get and churn on every available
+     * processor, at least two threads, sharing one table.
+     */
+    static void suite(int passengers, Engine only) {
+        int threads = Math.max(Runtime.getRuntime().availableProcessors(), 2);
+        System.out.printf("%-10s %7s %-14s %8s %5s %-9s %10s %8s%n", "engine", "threads",
+                "corpus", "size", "load", "op", "ns/op", "+-");
+        for (Engine engine : Engine.values()) {
+            if (only != null && engine != only) {
+                continue;
+            }
+            for (int size : new int[]{Math.max(passengers / 10, 1), passengers}) {
+                for (Corpus corpus : Corpus.values()) {
+                    if (corpus == Corpus.ADVERSARIAL && size > MAX_ADVERSARIAL) {
+                        continue;
+                    }
+                    PassportHash hash = corpus == Corpus.ADVERSARIAL
+                            ? PassportHash.LEGACY : PassportHash.DEFAULT;
+                    String[] ids = corpus.generate(size * 2, SEED);
+                    String[] present = Arrays.copyOfRange(ids, 0, size);
+                    String[] absent = Arrays.copyOfRange(ids, size, ids.length);
+                    String[] mixed = new String[size];
+                    for (int i = 0; i < size; i++) {
+                        mixed[i] = (i & 1) == 0 ? present[i] : absent[i];
+                    }
+                    int[] churn = churnSchedule(size);
+                    for (double loadFactor : new double[]{0.5, 0.75, 0.9}) {
+                        Supplier<SecurityDBBase> empty = () -> engine.create(16, loadFactor, hash);
+                        Supplier<SecurityDBBase> filled = () -> {
+                            SecurityDBBase db = empty.get();
+                            for (String id : present) {
+                                db.addPassenger("Passenger", id);
+                            }
+                            return db;
+                        };
+                        Map<String, double[]> results = new LinkedHashMap<>();
+                        results.put("add", measure(empty, size, db -> {
+                            for (String id : present) {
+                                db.addPassenger("Passenger", id);
+                            }
+                        }));
+                        SecurityDBBase db = filled.get();
+                        results.put("get-hit", measure(db, size, table -> lookUp(table, present)));
+                        results.put("get-miss", measure(db, size, table -> lookUp(table, absent)));
+                        results.put("contains", measure(db, size, table -> {
+                            int found = 0;
+                            for (String id : mixed) {
+                                if (table.contains(id)) {
+                                    found++;
+                                }
+                            }
+                            BLACKHOLE.addAndGet(found);
+                        }));
+                        results.put("remove", measure(filled, size, table -> {
+                            for (String id : present) {
+                                table.remove(id);
+                            }
+                        }));
+                        results.put("churn", measure(filled, churn.length,
+                                table -> runChurn(table, ids, churn, 0)));
+                        close(db);
+                        for (Map.Entry<String, double[]> result : results.entrySet()) {
+                            printSuiteRow(engine, 1, corpus, size, loadFactor, result.getKey(),
+                                    result.getValue());
+                        }
+                        if (engine.isThreadSafe()) {
+                            SecurityDBBase shared = filled.get();
+                            printSuiteRow(engine, threads, corpus, size, loadFactor, "get-hit",
+                                    measure(shared, size * threads, table ->
+                                            runThreads(threads, t -> lookUp(table, present))));
+                            close(shared);
+                            printSuiteRow(engine, threads, corpus, size, loadFactor, "churn",
+                                    measure(filled, churn.length * threads, table ->
+                                            runThreads(threads, t -> runChurn(table, ids, churn,
+                                                    t * (churn.length / threads)))));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Runs the warm-up and timed passes of one measurement. Each pass gets
+     * its own database from the supplier, closed afterwards, and performs
+     * ops operations on it. Returns the mean and standard deviation of the
+     * ns/op of the timed passes.
+     */
+    private static double[] measure(Supplier<SecurityDBBase> setup, int ops,
+                                    Consumer<SecurityDBBase> pass) {
+        double[] samples = new double[MEASURED_PASSES];
+        for (int run = 0; run < WARMUP_PASSES + MEASURED_PASSES; run++) {
+            SecurityDBBase db = setup.get();
+            long start = System.nanoTime();
+            pass.accept(db);
+            long elapsed = System.nanoTime() - start;
+            if (run >= WARMUP_PASSES) {
+                samples[run - WARMUP_PASSES] = (double) elapsed / ops;
+            }
+            close(db);
+        }
+        return summarize(samples);
+    }
+
+    /* As above, with every pass on the same database, which is left open */
+    private static double[] measure(SecurityDBBase db, int ops, Consumer<SecurityDBBase> pass) {
+        double[] samples = new double[MEASURED_PASSES];
+        for (int run = 0; run < WARMUP_PASSES + MEASURED_PASSES; run++) {
+            long start = System.nanoTime();
+            pass.accept(db);
+            long elapsed = System.nanoTime() - start;
+            if (run >= WARMUP_PASSES) {
+                samples[run - WARMUP_PASSES] = (double) elapsed / ops;
+            }
+        }
+        return summarize(samples);
+    }
+
+    private static double[] summarize(double[] samples) {
+        double mean = Arrays.stream(samples).average().orElse(0);
+        double variance = Arrays.stream(samples).map(x -> (x - mean) * (x - mean)).sum()
+                / Math.max(samples.length - 1, 1);
+        return new double[]{mean, Math.sqrt(variance)};
+    }
+
+    private static void printSuiteRow(Engine engine, int threads, Corpus corpus, int size,
+                                      double loadFactor, String op, double[] result) {
+        System.out.printf("%-10s %7d %-14s %8d %5.2f %-9s %10.1f %8.1f%n", engine, threads,
+                corpus, size, loadFactor, op, result[0], result[1]);
+    }
+
+    private static void lookUp(SecurityDBBase db, String[] ids) {
+        int found = 0;
+        for (String id : ids) {
+            if (db.get(id) != null) {
+                found++;
+            }
+        }
+        BLACKHOLE.addAndGet(found);
+    }
+
+    /*
+     * Churn operations for a table of the given size, two per passenger:
+     * each entry packs an index into the suite's 2 * size IDs with the
+     * operation in its low two bits, 0 and 1 for get, 2 for add and 3 for
+     * remove. Generated up front so the timed loop does no random draws.
+     */
+    private static int[] churnSchedule(int size) {
+        Random random = new Random(SEED);
+        int[] schedule = new int[size * 2];
+        for (int i = 0; i < schedule.length; i++) {
+            schedule[i] = random.nextInt(size * 2) << 2 | random.nextInt(4);
+        }
+        return schedule;
+    }
+
+    /* Runs the churn schedule once, starting at the given offset */
+    private static void runChurn(SecurityDBBase db, String[] ids, int[] schedule, int offset) {
+        int sink = 0;
+        for (int i = 0; i < schedule.length; i++) {
+            int op = schedule[(offset + i) % schedule.length];
+            String id = ids[op >>> 2];
+            switch (op & 3) {
+                case 2:
+                    db.addPassenger("Passenger", id);
+                    break;
+                case 3:
+                    db.remove(id);
+                    break;
+                default:
+                    if (db.get(id) != null) {
+                        sink++;
+                    }
+            }
+        }
+        BLACKHOLE.addAndGet(sink);
+    }
+
+    private static void close(SecurityDBBase db) {
+        if (db instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) db).close();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static double bestLookupNanos(SecurityDB db, String[] ids) {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < 5; run++) {
+            long start = System.nanoTime();
+            int found = 0;
+            for (String id : ids) {
+                if (db.contains(id)) {
+                    found++;
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+            BLACKHOLE.addAndGet(found);
+        }
+        return (double) best / ids.length;
+    }
+
+    /* Consumes benchmark results so the JIT cannot discard the work */
+    private static final AtomicLong BLACKHOLE = new AtomicLong();
+
+    private static void runThreads(int threads, IntConsumer body) {
+        Thread[] workers = new Thread[threads];
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            workers[t] = new Thread(() -> body.accept(id), "bench-" + t);
+            workers[t].setUncaughtExceptionHandler((thread, e) -> error.compareAndSet(null, e));
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+        if (error.get() != null) {
+            throw new IllegalStateException(error.get());
+        }
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(gc.getCollectionCount(), 0);
+        }
+        return total;
+    }
+
+    private static long gcTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(gc.getCollectionTime(), 0);
+        }
+        return total;
+    }
+
+    private static String randomId(Random random, int length) {
+        StringBuilder id = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            id.append(ALPHANUMERIC.charAt(random.nextInt(ALPHANUMERIC.length())));
+        }
+        return id.toString();
+    }
+
+    /**
+     * Adds variants of one random base ID that keep its LEGACY hash. LEGACY
+     * weights the character at position i by (length - i), so adding
+     * (+1, -2, +1) to three consecutive characters leaves the hash unchanged.
+     */
+    private static void addLegacyCollisions(Random random, Set<String> ids, int count) {
+        char[] base = new char[8];
+        for (int i = 0; i < base.length; i++) {
+            base[i] = (char) ('E' + random.nextInt(18));
+        }
+        int patterns = base.length - 2;
+        int variants = (int) Math.pow(3, patterns);
+        for (int v = 0; v < variants && ids.size() < count; v++) {
+            char[] id = base.clone();
+            int code = v;
+            for (int p = 0; p < patterns; p++) {
+                int step = code % 3 - 1;
+                code /= 3;
+                id[p] += step;
+                id[p + 1] -= 2 * step;
+                id[p + 2] += step;
+            }
+            ids.add(new String(id));
+        }
+    }
+}
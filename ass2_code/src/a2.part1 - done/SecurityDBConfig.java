@@ -0,0 +1,238 @@
+/**
+ * Tuning options for a SecurityDB. Setters return this config so options
+ * can be chained; a config may be reused for several databases.
+ */
+public class SecurityDBConfig {
+
+    /* Maximum ratio of passengers to buckets before the table grows */
+    private double loadFactor = SecHashTable.DEFAULT_LOAD_FACTOR;
+    /* Function used to hash passport IDs */
+    private PassportHash hashStrategy = PassportHash.DEFAULT;
+    /* Whether passport IDs are packed into primitive long keys */
+    private boolean compactKeys = false;
+    /* Whether passengers are kept in a bucketized cuckoo table */
+    private boolean cuckooHashing = false;
+    /* Whether lookups may run concurrently with writers */
+    private boolean optimisticReads = false;
+    /* Receiver of suspicious-passenger events; null for a private queue */
+    private SuspiciousPassengerListener suspiciousPassengerListener = null;
+    /* Whether lookups are screened by a Bloom filter of the passports on record */
+    private boolean bloomFilter = false;
+    /* Whether passengers are also indexed by name */
+    private boolean nameIndex = false;
+    /* Whether operation counters and sampled histograms are kept */
+    private boolean statistics = false;
+    /* Longest time a journaled mutation waits for its fsync; 0 for none */
+    private long journalFlushIntervalMillis = 10;
+    /* Journal records that trigger a flush without waiting for the interval */
+    private int journalBatchSize = 256;
+
+    /**
+     * Sets the load factor the table grows at.
+     *
+     * @param loadFactor maximum fill ratio before growing, in (0, 1)
+     * @return this config
+     */
+    public SecurityDBConfig loadFactor(double loadFactor) {
+        this.loadFactor = loadFactor;
+        return this;
+    }
+
+    /**
+     * Sets the strategy used to hash passport IDs.
+     *
+     * @param hashStrategy passport hash function
+     * @return this config
+     */
+    public SecurityDBConfig hashStrategy(PassportHash hashStrategy) {
+        this.hashStrategy = hashStrategy;
+        return this;
+    }
+
+    /**
+     * Enables compact storage. Passport IDs of up to ten ASCII letters and
+     * digits are packed into a long[] table and names into a shared byte
+     * arena; any other ID falls back to the object table.
+     *
+     * @param compactKeys true to pack passport IDs into primitive keys
+     * @return this config
+     */
+    public SecurityDBConfig compactKeys(boolean compactKeys) {
+        this.compactKeys = compactKeys;
+        return this;
+    }
+
+    /**
+     * Stores passengers in a bucketized cuckoo hash table instead of a
+     * linear-probing one. Every passenger may sit in one of two buckets of
+     * four slots, so a lookup inspects at most eight slots plus a small
+     * stash however the table is filled, trading slightly slower inserts for
+     * a bounded worst case. Cannot be combined with compact keys.
+     *
+     * @param cuckooHashing true to use the cuckoo engine
+     * @return this config
+     */
+    public SecurityDBConfig cuckooHashing(boolean cuckooHashing) {
+        this.cuckooHashing = cuckooHashing;
+        return this;
+    }
+
+    /**
+     * Makes the database safe for concurrent use by guarding it with a
+     * StampedLock. Lookups run as optimistic reads that neither block nor
+     * write shared memory and are retried if a writer intervened; adds,
+     * removes and resizes take the exclusive lock. Suited to workloads where
+     * lookups vastly outnumber updates.
+     *
+     * @param optimisticReads true to enable the optimistic-read protocol
+     * @return this config
+     */
+    public SecurityDBConfig optimisticReads(boolean optimisticReads) {
+        this.optimisticReads = optimisticReads;
+        return this;
+    }
+
+    /**
+     * Sets the listener told about passports presented under a name other
+     * than the one on record. By default each database records them in its
+     * own SuspiciousPassengerQueue.
+     *
+     * @param listener suspicious-passenger listener, or null for the default
+     * @return this config
+     */
+    public SecurityDBConfig suspiciousPassengerListener(SuspiciousPassengerListener listener) {
+        this.suspiciousPassengerListener = listener;
+        return this;
+    }
+
+    /**
+     * Puts a blocked Bloom filter in front of the table, so that most
+     * lookups of passports that are not on record are answered from one
+     * cache line without probing. The filter is maintained on every add,
+     * rebuilt when the table grows, and rebuilt once removals make up half
+     * of its entries. It costs about ten bits per bucket.
+     *
+     * @param bloomFilter true to screen lookups with a Bloom filter
+     * @return this config
+     */
+    public SecurityDBConfig bloomFilter(boolean bloomFilter) {
+        this.bloomFilter = bloomFilter;
+        return this;
+    }
+
+    /**
+     * Keeps a secondary index of passengers by name, maintained on every
+     * add and remove, so that SecurityDB.findByName and findByNamePrefix
+     * answer in time proportional to the number of matches instead of
+     * scanning the table.
+     *
+     * @param nameIndex true to index passengers by name
+     * @return this config
+     */
+    public SecurityDBConfig nameIndex(boolean nameIndex) {
+        this.nameIndex = nameIndex;
+        return this;
+    }
+
+    /**
+     * Keeps operation counters, resize timings and sampled probe-length and
+     * latency histograms, available from SecurityDB.getStatistics, over JMX
+     * and as JFR events. Without it no statistics code runs; each operation
+     * only tests that statistics are off.
+     *
+     * @param statistics true to keep statistics
+     * @return this config
+     */
+    public SecurityDBConfig statistics(boolean statistics) {
+        this.statistics = statistics;
+        return this;
+    }
+
+    /**
+     * Sets how often the journal's background thread forces buffered
+     * records to disk. This bounds how many acknowledged mutations a crash
+     * can lose. With 0 there is no background flush, and records reach the
+     * disk only when a batch fills or a caller syncs.
+     *
+     * @param millis flush interval in milliseconds, at least 0
+     * @return this config
+     */
+    public SecurityDBConfig journalFlushInterval(long millis) {
+        this.journalFlushIntervalMillis = millis;
+        return this;
+    }
+
+    /**
+     * Sets how many journal records are buffered before the appending thread
+     * flushes them with a single fsync. With 1 every mutation is forced to
+     * disk before it returns.
+     *
+     * @param batchSize records per group commit, at least 1
+     * @return this config
+     */
+    public SecurityDBConfig journalBatchSize(int batchSize) {
+        this.journalBatchSize = batchSize;
+        return this;
+    }
+
+    public double getLoadFactor() {
+        return loadFactor;
+    }
+
+    public PassportHash getHashStrategy() {
+        return hashStrategy;
+    }
+
+    public boolean isCompactKeys() {
+        return compactKeys;
+    }
+
+    public boolean isCuckooHashing() {
+        return cuckooHashing;
+    }
+
+    public boolean isOptimisticReads() {
+        return optimisticReads;
+    }
+
+    public SuspiciousPassengerListener getSuspiciousPassengerListener() {
+        return suspiciousPassengerListener;
+    }
+
+    public boolean isBloomFilter() {
+        return bloomFilter;
+    }
+
+    public boolean isNameIndex() {
+        return nameIndex;
+    }
+
+    public boolean isStatistics() {
+        return statistics;
+    }
+
+    public long getJournalFlushIntervalMillis() {
+        return journalFlushIntervalMillis;
+    }
+
+    public int getJournalBatchSize() {
+        return journalBatchSize;
+    }
+
+    /**
+     * Creates the storage engine described by this config.
+     *
+     * @param expectedPassengers number of passengers to size the table for
+     * @return empty passenger table
+     */
+    PassengerTable newTable(int expectedPassengers) {
+        if (compactKeys && cuckooHashing) {
+            throw new IllegalArgumentException("Compact keys and cuckoo hashing cannot be combined");
+        } else if (cuckooHashing) {
+            return new CuckooPassengerTable(expectedPassengers, loadFactor);
+        } else if (compactKeys) {
+            return new CompactPassengerTable(expectedPassengers, loadFactor);
+        }
+        return new SecHashTable(expectedPassengers, loadFactor);
+    }
+}
@@ -0,0 +1,494 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of SecurityDB adds and removes, for
+ * durability between snapshots.
+ *
+ * Records are appended to an in-memory batch and reach the disk with group
+ * commit: one write and one fsync cover every record appended since the
+ * last flush. A batch is flushed by the appending thread once it holds the
+ * configured number of records, after it has let go of any lock of its
+ * own, and by a background thread once the flush interval has passed, so
+ * an acknowledged mutation is lost in a crash only if it was appended
+ * within the last interval. Callers that need a mutation on disk before
+ * going on call awaitDurable() with the sequence number of its record, or
+ * sync(); concurrent callers share one fsync.
+ *
+ * Each record is little-endian: payload length, CRC32 of the payload, then
+ * the payload, which is the operation code followed by the passport ID and,
+ * for adds, the name, each as a length and UTF-16 characters. Payloads are
+ * at most MAX_PAYLOAD_BYTES. Replay stops at the first truncated or corrupt
+ * record, which is where a crash during a write leaves the file, and the
+ * journal is cut back to that point; a length that runs past the end of
+ * the file or over the limit counts as truncated, so it is never allocated.
+ */
+public class SecurityDBJournal implements AutoCloseable {
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int BUFFER_BYTES = 1 << 16;
+    /* Largest payload written or replayed, far above any real passport ID and name */
+    private static final int MAX_PAYLOAD_BYTES = 1 << 24;
+
+    private final FileChannel channel;
+    private final int batchSize;
+    private final Thread flusher;
+    private final int replayed;
+
+    /* Guards the pending batch, the sequence numbers and closed */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition closing = this.lock.newCondition();
+    /* Held while a batch is written and forced, so flushes stay in order */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private ByteBuffer pending;
+    private ByteBuffer spare;
+    private int pendingRecords;
+    private long appended;
+    private volatile long durable;
+    private volatile IOException failure;
+    private boolean closed;
+
+    private SecurityDBJournal(FileChannel channel, SecurityDBConfig config, int replayed) {
+        this.channel = channel;
+        this.batchSize = config.getJournalBatchSize();
+        this.replayed = replayed;
+        this.pending = ByteBuffer.allocate(BUFFER_BYTES).order(SecurityDBSnapshot.ORDER);
+        this.spare = ByteBuffer.allocate(BUFFER_BYTES).order(SecurityDBSnapshot.ORDER);
+        long interval = config.getJournalFlushIntervalMillis();
+        if (interval > 0) {
+            this.flusher = new Thread(() -> flushPeriodically(interval), "securitydb-journal");
+            this.flusher.setDaemon(true);
+            this.flusher.start();
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    /**
+     * Replays the journal file, if there is one, into the database and opens
+     * it for appending. A torn record at the end of the file is discarded.
+     *
+     * @param file   journal file, created if absent
+     * @param db     database to replay into, usually a fresh database or one
+     *               opened from the latest snapshot
+     * @param config journal flush interval and batch size
+     * @return journal positioned after the last valid record
+     * @throws IOException if the file cannot be read or opened
+     */
+    public static SecurityDBJournal open(Path file, SecurityDBBase db, SecurityDBConfig config)
+            throws IOException {
+        if (config.getJournalFlushIntervalMillis() < 0) {
+            throw new IllegalArgumentException("Flush interval must not be negative: "
+                    + config.getJournalFlushIntervalMillis());
+        } else if (config.getJournalBatchSize() < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: "
+                    + config.getJournalBatchSize());
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long[] validBytes = new long[1];
+            int replayed = replay(channel, db, validBytes);
+            channel.truncate(validBytes[0]);
+            channel.position(validBytes[0]);
+            return new SecurityDBJournal(channel, config, replayed);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of records replayed when the journal was opened.
+     *
+     * @return replayed records
+     */
+    public int getReplayedCount() {
+        return this.replayed;
+    }
+
+    /**
+     * Appends a successful add.
+     *
+     * @param name       passenger's full name
+     * @param passportId passenger's passport ID
+     * @return sequence number of the record
+     * @throws IOException if an earlier flush failed or the flush fails
+     */
+    public long logAdd(String name, String passportId) throws IOException {
+        long sequence = appendAdd(name, passportId);
+        flushIfFull();
+        return sequence;
+    }
+
+    /**
+     * Appends a successful remove.
+     *
+     * @param passportId passenger's passport ID
+     * @return sequence number of the record
+     * @throws IOException if an earlier flush failed or the flush fails
+     */
+    public long logRemove(String passportId) throws IOException {
+        long sequence = appendRemove(passportId);
+        flushIfFull();
+        return sequence;
+    }
+
+    /**
+     * Appends a successful add without flushing, for callers that hold a
+     * lock of their own and call flushIfFull() once they have released it.
+     */
+    long appendAdd(String name, String passportId) throws IOException {
+        return append(ADD, passportId, name);
+    }
+
+    /** Appends a successful remove without flushing, as appendAdd does */
+    long appendRemove(String passportId) throws IOException {
+        return append(REMOVE, passportId, null);
+    }
+
+    /**
+     * Flushes the pending batch if it holds the configured number of
+     * records.
+     *
+     * @throws IOException if the flush fails
+     */
+    void flushIfFull() throws IOException {
+        this.lock.lock();
+        boolean full;
+        try {
+            full = this.pendingRecords >= this.batchSize;
+        } finally {
+            this.lock.unlock();
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Waits until the record with the given sequence number, and so every
+     * record before it, is on disk.
+     *
+     * @param sequence sequence number returned by logAdd or logRemove
+     * @throws IOException if the flush fails
+     */
+    public void awaitDurable(long sequence) throws IOException {
+        while (this.durable < sequence) {
+            flush();
+        }
+    }
+
+    /**
+     * Forces every record appended so far to disk.
+     *
+     * @throws IOException if the flush fails
+     */
+    public void sync() throws IOException {
+        this.lock.lock();
+        long sequence;
+        try {
+            sequence = this.appended;
+        } finally {
+            this.lock.unlock();
+        }
+        awaitDurable(sequence);
+    }
+
+    /**
+     * Discards every record, after their mutations have been captured in a
+     * snapshot. Records appended but not yet flushed are discarded too.
+     *
+     * @throws IOException if the file cannot be truncated
+     */
+    public void truncate() throws IOException {
+        this.flushLock.lock();
+        try {
+            this.lock.lock();
+            try {
+                this.pending.clear();
+                this.pendingRecords = 0;
+                this.durable = this.appended;
+            } finally {
+                this.lock.unlock();
+            }
+            this.channel.truncate(0);
+            this.channel.force(true);
+        } finally {
+            this.flushLock.unlock();
+        }
+    }
+
+    /**
+     * Flushes every pending record, stops the background flusher and closes
+     * the file. Closing twice is a no-op.
+     *
+     * @throws IOException if the final flush fails
+     */
+    @Override
+    public void close() throws IOException {
+        this.lock.lock();
+        try {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.closing.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+        if (this.flusher != null) {
+            try {
+                this.flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            flush();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    private long append(byte operation, String passportId, String name) throws IOException {
+        checkFailure();
+        long payloadBytes = 1 + 4 + passportId.length() * 2L
+                + (name == null ? 0 : 4 + name.length() * 2L);
+        if (payloadBytes > MAX_PAYLOAD_BYTES) {
+            throw new IllegalArgumentException("Journal record too large: " + payloadBytes + " bytes");
+        }
+        int payload = (int) payloadBytes;
+        long sequence;
+        this.lock.lock();
+        try {
+            if (this.closed) {
+                throw new IllegalStateException("SecurityDBJournal is closed");
+            }
+            ByteBuffer batch = reserve(RECORD_HEADER_BYTES + payload);
+            int start = batch.position();
+            batch.putInt(payload).putInt(0).put(operation);
+            putString(batch, passportId);
+            if (name != null) {
+                putString(batch, name);
+            }
+            CRC32 crc = new CRC32();
+            ByteBuffer written = batch.duplicate();
+            written.limit(batch.position()).position(start + RECORD_HEADER_BYTES);
+            crc.update(written);
+            batch.putInt(start + 4, (int) crc.getValue());
+            sequence = ++this.appended;
+            this.pendingRecords++;
+        } finally {
+            this.lock.unlock();
+        }
+        return sequence;
+    }
+
+    /* Grows the pending batch, if needed, to take another record */
+    private ByteBuffer reserve(int bytes) {
+        if (this.pending.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(
+                    Math.max(this.pending.capacity() * 2, this.pending.position() + bytes))
+                    .order(SecurityDBSnapshot.ORDER);
+            this.pending.flip();
+            grown.put(this.pending);
+            this.pending = grown;
+        }
+        return this.pending;
+    }
+
+    /**
+     * Swaps out the pending batch, writes it and forces it to disk. Records
+     * appended meanwhile go into the other buffer and wait for the next
+     * flush.
+     */
+    private void flush() throws IOException {
+        this.flushLock.lock();
+        try {
+            checkFailure();
+            ByteBuffer batch;
+            long sequence;
+            this.lock.lock();
+            try {
+                if (this.pendingRecords == 0) {
+                    return;
+                }
+                batch = this.pending;
+                sequence = this.appended;
+                this.pending = this.spare != null ? this.spare
+                        : ByteBuffer.allocate(BUFFER_BYTES).order(SecurityDBSnapshot.ORDER);
+                this.spare = null;
+                this.pendingRecords = 0;
+            } finally {
+                this.lock.unlock();
+            }
+            try {
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    this.channel.write(batch);
+                }
+                this.channel.force(false);
+            } catch (IOException e) {
+                this.failure = e;
+                throw e;
+            }
+            batch.clear();
+            this.lock.lock();
+            try {
+                this.spare = batch;
+                this.durable = sequence;
+            } finally {
+                this.lock.unlock();
+            }
+        } finally {
+            this.flushLock.unlock();
+        }
+    }
+
+    private void flushPeriodically(long intervalMillis) {
+        while (true) {
+            this.lock.lock();
+            try {
+                if (!this.closed) {
+                    this.closing.await(intervalMillis, TimeUnit.MILLISECONDS);
+                }
+                if (this.closed) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                this.lock.unlock();
+            }
+            try {
+                flush();
+            } catch (IOException e) {
+                // kept in failure and reported to the next caller
+            }
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (this.failure != null) {
+            throw new IOException("Journal write failed earlier", this.failure);
+        }
+    }
+
+    /**
+     * Applies every valid record from the start of the channel to the
+     * database, stores the length of the valid prefix in validBytes[0] and
+     * returns the number of records applied.
+     */
+    private static int replay(FileChannel channel, SecurityDBBase db, long[] validBytes)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES).order(SecurityDBSnapshot.ORDER);
+        buffer.flip();
+        long position = 0;
+        long fileBytes = channel.size();
+        int records = 0;
+        CRC32 crc = new CRC32();
+        while (true) {
+            buffer = fill(channel, buffer, RECORD_HEADER_BYTES);
+            if (buffer.remaining() < RECORD_HEADER_BYTES) {
+                break;
+            }
+            int payload = buffer.getInt(buffer.position());
+            int checksum = buffer.getInt(buffer.position() + 4);
+            if (payload < 5 || payload > MAX_PAYLOAD_BYTES
+                    || payload > fileBytes - position - RECORD_HEADER_BYTES) {
+                break;
+            }
+            buffer = fill(channel, buffer, RECORD_HEADER_BYTES + payload);
+            if (buffer.remaining() < RECORD_HEADER_BYTES + payload) {
+                break;
+            }
+            ByteBuffer record = buffer.duplicate().order(SecurityDBSnapshot.ORDER);
+            record.position(buffer.position() + RECORD_HEADER_BYTES)
+                    .limit(buffer.position() + RECORD_HEADER_BYTES + payload);
+            crc.reset();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != checksum || !apply(record, db)) {
+                break;
+            }
+            buffer.position(buffer.position() + RECORD_HEADER_BYTES + payload);
+            position += RECORD_HEADER_BYTES + payload;
+            records++;
+        }
+        validBytes[0] = position;
+        return records;
+    }
+
+    /* Reads more of the channel until the buffer holds at least the given bytes or the file ends */
+    private static ByteBuffer fill(FileChannel channel, ByteBuffer buffer, int bytes)
+            throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        if (buffer.capacity() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(bytes).order(SecurityDBSnapshot.ORDER);
+            grown.put(buffer);
+            buffer = grown;
+        } else {
+            buffer.compact();
+        }
+        while (buffer.position() < bytes && channel.read(buffer) > 0) {
+            // keep reading until enough bytes are buffered
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static boolean apply(ByteBuffer record, SecurityDBBase db) {
+        byte operation = record.get();
+        String passportId = getString(record);
+        if (passportId == null) {
+            return false;
+        }
+        if (operation == ADD) {
+            String name = getString(record);
+            if (name == null) {
+                return false;
+            }
+            db.addPassenger(name, passportId);
+            return true;
+        } else if (operation == REMOVE) {
+            db.remove(passportId);
+            return true;
+        }
+        return false;
+    }
+
+    private static void putString(ByteBuffer buffer, String text) {
+        buffer.putInt(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            buffer.putChar(text.charAt(i));
+        }
+    }
+
+    /* Returns null if the record is too short for the string it announces */
+    private static String getString(ByteBuffer record) {
+        if (record.remaining() < 4) {
+            return null;
+        }
+        int length = record.getInt();
+        if (length < 0 || record.remaining() < length * 2L) {
+            return null;
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = record.getChar();
+        }
+        return new String(chars);
+    }
+}
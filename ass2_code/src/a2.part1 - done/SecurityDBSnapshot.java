@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes SecurityDB snapshots: binary images of the passenger table that
+ * MappedSecurityDB serves straight from a memory-mapped file, so a
+ * restarted process answers lookups without re-adding every passenger.
+ *
+ * A snapshot is little-endian and laid out as
+ *
+ *   header   32 bytes: magic, format version, planes, passengers per plane,
+ *            slot count, passenger count, record bytes, reserved
+ *   slots    8 bytes each: passport hash, then record offset plus one
+ *            (zero marks an empty slot), as a Robin Hood probing table
+ *   records  back to back: passport length, name length, then the UTF-16
+ *            characters of both
+ *
+ * Slot positions are computed with MURMUR3 whatever hash the source
+ * database uses, so every snapshot can be read the same way. A snapshot is
+ * written to a temporary file, forced to disk and then moved over the
+ * target, so readers never see a half-written file.
+ */
+public final class SecurityDBSnapshot {
+
+    static final int MAGIC = 0x53444231;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int SLOT_BYTES = 8;
+    static final int RECORD_HEADER_BYTES = 8;
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /** Hash that slot positions in every snapshot are computed with */
+    static final PassportHash HASH = PassportHash.MURMUR3;
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private SecurityDBSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of every passenger in the database. A
+     * MappedSecurityDB is written with its changes since it was opened, and
+     * keeps mapping its old file even if that file is the target, on
+     * platforms that allow renaming over it.
+     *
+     * @param db   database to snapshot
+     * @param file snapshot file, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(PassengerSource db, Path file) throws IOException {
+        List<String> passportIds = new ArrayList<>(db.count());
+        List<String> names = new ArrayList<>(db.count());
+        db.forEachPassenger((passportId, name) -> {
+            passportIds.add(passportId);
+            names.add(name);
+        });
+        write(db.getNumPlanes(), db.getNumPassengersPerPlane(), passportIds, names, file);
+    }
+
+    private static void write(int numPlanes, int numPassengersPerPlane, List<String> passportIds,
+                              List<String> names, Path file) throws IOException {
+        int count = passportIds.size();
+        int size = SecHashTable.setSize(
+                (int) Math.ceil(Math.max(count, 1) / SecHashTable.DEFAULT_LOAD_FACTOR));
+        int[] slotHashes = new int[size];
+        int[] slotRefs = new int[size];
+        long recordBytes = 0;
+        for (int i = 0; i < count; i++) {
+            if (recordBytes >= Integer.MAX_VALUE) {
+                throw new IOException("Snapshot larger than 2 GiB");
+            }
+            insert(slotHashes, slotRefs, HASH.hash(passportIds.get(i)), (int) recordBytes + 1);
+            recordBytes += RECORD_HEADER_BYTES
+                    + 2L * (passportIds.get(i).length() + names.get(i).length());
+        }
+        if (HEADER_BYTES + (long) size * SLOT_BYTES + recordBytes > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot larger than 2 GiB");
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ORDER);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(numPlanes).putInt(numPassengersPerPlane)
+                    .putInt(size).putInt(count).putInt((int) recordBytes).putInt(0);
+            for (int slot = 0; slot < size; slot++) {
+                ensureRoom(channel, buffer, SLOT_BYTES);
+                buffer.putInt(slotHashes[slot]).putInt(slotRefs[slot]);
+            }
+            for (int i = 0; i < count; i++) {
+                String passportId = passportIds.get(i);
+                String name = names.get(i);
+                ensureRoom(channel, buffer, RECORD_HEADER_BYTES);
+                buffer.putInt(passportId.length()).putInt(name.length());
+                putChars(channel, buffer, passportId);
+                putChars(channel, buffer, name);
+            }
+            drain(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /* Robin Hood insertion of a record reference, as in SecHashTable */
+    private static void insert(int[] slotHashes, int[] slotRefs, int hashCode, int ref) {
+        int size = slotHashes.length;
+        int slot = SecHashTable.homeSlot(hashCode, size);
+        int distance = 0;
+        while (slotRefs[slot] != 0) {
+            int home = SecHashTable.homeSlot(slotHashes[slot], size);
+            int residentDistance = slot >= home ? slot - home : slot + size - home;
+            if (residentDistance < distance) {
+                int displacedHash = slotHashes[slot];
+                int displacedRef = slotRefs[slot];
+                slotHashes[slot] = hashCode;
+                slotRefs[slot] = ref;
+                hashCode = displacedHash;
+                ref = displacedRef;
+                distance = residentDistance;
+            }
+            slot = slot + 1 == size ? 0 : slot + 1;
+            distance++;
+        }
+        slotHashes[slot] = hashCode;
+        slotRefs[slot] = ref;
+    }
+
+    private static void putChars(FileChannel channel, ByteBuffer buffer, String text)
+            throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            ensureRoom(channel, buffer, 2);
+            buffer.putChar(text.charAt(i));
+        }
+    }
+
+    private static void ensureRoom(FileChannel channel, ByteBuffer buffer, int bytes)
+            throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain(channel, buffer);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
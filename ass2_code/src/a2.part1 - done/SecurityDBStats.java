@@ -0,0 +1,363 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Operation counters and sampled histograms of a SecurityDB, kept when
+ * SecurityDBConfig.statistics is set. A database without statistics holds
+ * no instance of this class; what remains of the instrumentation is one
+ * test of a final field per operation, which sends get() down a separate
+ * recording path.
+ *
+ * Counters are LongAdders, so threads recording at once do not contend on
+ * a shared cache line. Every operation bumps a counter; only one lookup
+ * or insert in SAMPLE_INTERVAL is timed and has its probe length measured.
+ * A sampled lookup measures its probe length while it probes; a sampled
+ * insert looks its passenger up once more, under the write lock it
+ * already holds. Resizes are always timed.
+ *
+ * Sampled lookups and every resize are also emitted as JFR events in the
+ * SecurityDB category, which cost nothing unless a recording enables them.
+ * The statistics can be published over JMX with registerMBean.
+ */
+public final class SecurityDBStats implements SecurityDBStatsMXBean {
+
+    /** One operation in this many is sampled */
+    public static final int SAMPLE_INTERVAL = 64;
+
+    /* Probe histograms count lengths 1 to PROBE_BUCKETS - 1, then everything longer */
+    private static final int PROBE_BUCKETS = 33;
+    /* Latency buckets cover up to 2^39 ns, about nine minutes */
+    private static final int LATENCY_BUCKETS = 40;
+
+    private final SecurityDB db;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder lookupHits = new LongAdder();
+    private final LongAdder bloomRejections = new LongAdder();
+    private final LongAdder inserts = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder fullRejections = new LongAdder();
+    private final LongAdder removals = new LongAdder();
+    private final LongAdder resizes = new LongAdder();
+    private final LongAdder resizeNanos = new LongAdder();
+    private final LongAccumulator maxResizeNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] lookupProbes = newHistogram(PROBE_BUCKETS);
+    private final LongAdder[] insertProbes = newHistogram(PROBE_BUCKETS);
+    private final LongAdder[] lookupLatencies = newHistogram(LATENCY_BUCKETS);
+
+    private ObjectName objectName;
+
+    SecurityDBStats(SecurityDB db) {
+        this.db = db;
+    }
+
+    /** True for about one call in SAMPLE_INTERVAL */
+    boolean shouldSample() {
+        return ThreadLocalRandom.current().nextInt(SAMPLE_INTERVAL) == 0;
+    }
+
+    void recordLookup(boolean hit) {
+        this.lookups.increment();
+        if (hit) {
+            this.lookupHits.increment();
+        }
+    }
+
+    void recordLookups(int count, int hits) {
+        this.lookups.add(count);
+        this.lookupHits.add(hits);
+    }
+
+    void recordBloomRejection() {
+        this.lookups.increment();
+        this.bloomRejections.increment();
+    }
+
+    /**
+     * Records a sampled get(), its probe length, or SecHashTable.NOT_FOUND
+     * on a miss, and how long it took.
+     */
+    void recordSampledLookup(boolean hit, int probeLength, long nanos) {
+        recordLookup(hit);
+        if (probeLength != SecHashTable.NOT_FOUND) {
+            this.lookupProbes[Math.min(probeLength, PROBE_BUCKETS - 1)].increment();
+        }
+        this.lookupLatencies[Math.min(64 - Long.numberOfLeadingZeros(nanos),
+                LATENCY_BUCKETS - 1)].increment();
+        LookupEvent event = new LookupEvent();
+        if (event.shouldCommit()) {
+            event.hit = hit;
+            event.probeLength = probeLength;
+            event.latency = nanos;
+            event.commit();
+        }
+    }
+
+    void recordAdd(AddResult result) {
+        switch (result) {
+            case INSERTED:
+                this.inserts.increment();
+                break;
+            case DUPLICATE:
+                this.duplicates.increment();
+                break;
+            case CONFLICTING_NAME:
+                this.conflicts.increment();
+                break;
+            case FULL:
+                this.fullRejections.increment();
+                break;
+            default:
+                throw new IllegalStateException(result.name());
+        }
+    }
+
+    /** Records the probe length of a sampled passenger just added */
+    void recordInsertProbe(int probeLength) {
+        if (probeLength != SecHashTable.NOT_FOUND) {
+            this.insertProbes[Math.min(probeLength, PROBE_BUCKETS - 1)].increment();
+        }
+    }
+
+    void recordRemoval() {
+        this.removals.increment();
+    }
+
+    void recordResize(int oldSize, int newSize, int passengers, long nanos) {
+        this.resizes.increment();
+        this.resizeNanos.add(nanos);
+        this.maxResizeNanos.accumulate(nanos);
+        ResizeEvent event = new ResizeEvent();
+        if (event.shouldCommit()) {
+            event.oldSize = oldSize;
+            event.newSize = newSize;
+            event.passengers = passengers;
+            event.resizeTime = nanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * Registers these statistics with the platform MBean server under
+     * SecurityDB:type=Statistics,name=&lt;name&gt;.
+     *
+     * @param name name distinguishing this database from others
+     * @return the name the MBean was registered under
+     * @throws JMException if the name is taken or cannot be registered
+     */
+    public synchronized ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("SecurityDB:type=Statistics,name="
+                + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.objectName = objectName;
+        return objectName;
+    }
+
+    /**
+     * Removes the MBean registered by registerMBean, if any.
+     *
+     * @throws JMException if the MBean server refuses
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (this.objectName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+            this.objectName = null;
+        }
+    }
+
+    @Override
+    public long getLookups() {
+        return this.lookups.sum();
+    }
+
+    @Override
+    public long getLookupHits() {
+        return this.lookupHits.sum();
+    }
+
+    @Override
+    public long getBloomRejections() {
+        return this.bloomRejections.sum();
+    }
+
+    @Override
+    public long getInserts() {
+        return this.inserts.sum();
+    }
+
+    @Override
+    public long getDuplicateRejections() {
+        return this.duplicates.sum();
+    }
+
+    @Override
+    public long getConflictingNameRejections() {
+        return this.conflicts.sum();
+    }
+
+    @Override
+    public long getFullRejections() {
+        return this.fullRejections.sum();
+    }
+
+    @Override
+    public long getRemovals() {
+        return this.removals.sum();
+    }
+
+    @Override
+    public long getResizes() {
+        return this.resizes.sum();
+    }
+
+    @Override
+    public long getResizeTimeNanos() {
+        return this.resizeNanos.sum();
+    }
+
+    @Override
+    public long getMaxResizeNanos() {
+        return this.maxResizeNanos.get();
+    }
+
+    /** Read without the lock unless the database uses optimistic reads */
+    @Override
+    public int getPassengerCount() {
+        return this.db.count();
+    }
+
+    /** Read without the lock unless the database uses optimistic reads */
+    @Override
+    public int getTableSize() {
+        return this.db.size();
+    }
+
+    @Override
+    public double getLoadFactor() {
+        int size = getTableSize();
+        return size == 0 ? 0 : (double) getPassengerCount() / size;
+    }
+
+    @Override
+    public long[] getLookupProbeHistogram() {
+        return snapshot(this.lookupProbes);
+    }
+
+    @Override
+    public long[] getInsertProbeHistogram() {
+        return snapshot(this.insertProbes);
+    }
+
+    @Override
+    public double getMeanLookupProbeLength() {
+        long[] histogram = getLookupProbeHistogram();
+        long samples = 0;
+        long total = 0;
+        for (int length = 0; length < histogram.length; length++) {
+            samples += histogram[length];
+            total += histogram[length] * length;
+        }
+        return samples == 0 ? 0 : (double) total / samples;
+    }
+
+    @Override
+    public long[] getLookupLatencyHistogram() {
+        return snapshot(this.lookupLatencies);
+    }
+
+    @Override
+    public long getLookupLatencyP99Nanos() {
+        long[] histogram = getLookupLatencyHistogram();
+        long samples = 0;
+        for (long count : histogram) {
+            samples += count;
+        }
+        long seen = 0;
+        for (int bucket = 0; bucket < histogram.length; bucket++) {
+            seen += histogram[bucket];
+            if (seen * 100 >= samples * 99 && samples > 0) {
+                return 1L << bucket;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder counter : new LongAdder[]{this.lookups, this.lookupHits,
+                this.bloomRejections, this.inserts, this.duplicates, this.conflicts,
+                this.fullRejections, this.removals, this.resizes, this.resizeNanos}) {
+            counter.reset();
+        }
+        this.maxResizeNanos.reset();
+        for (LongAdder[] histogram : new LongAdder[][]{this.lookupProbes, this.insertProbes,
+                this.lookupLatencies}) {
+            for (LongAdder bucket : histogram) {
+                bucket.reset();
+            }
+        }
+    }
+
+    private static LongAdder[] newHistogram(int buckets) {
+        LongAdder[] histogram = new LongAdder[buckets];
+        for (int i = 0; i < buckets; i++) {
+            histogram[i] = new LongAdder();
+        }
+        return histogram;
+    }
+
+    private static long[] snapshot(LongAdder[] histogram) {
+        long[] counts = new long[histogram.length];
+        for (int i = 0; i < histogram.length; i++) {
+            counts[i] = histogram[i].sum();
+        }
+        return counts;
+    }
+
+    @Name("SecurityDB.Lookup")
+    @Label("SecurityDB Lookup")
+    @Category("SecurityDB")
+    @Description("A sampled passport lookup")
+    static class LookupEvent extends Event {
+        @Label("Hit")
+        boolean hit;
+
+        @Label("Probe Length")
+        @Description("Slots inspected, or -1 for a miss")
+        int probeLength;
+
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+
+    @Name("SecurityDB.Resize")
+    @Label("SecurityDB Resize")
+    @Category("SecurityDB")
+    @Description("The passenger table grew and was rehashed")
+    static class ResizeEvent extends Event {
+        @Label("Old Size")
+        int oldSize;
+
+        @Label("New Size")
+        int newSize;
+
+        @Label("Passengers")
+        int passengers;
+
+        @Label("Resize Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long resizeTime;
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Management interface of SecurityDBStats, as published over JMX by
+ * SecurityDBStats.registerMBean.
+ *
+ * Counters run from the creation of the database or the last reset().
+ * Histograms are built from a sample of one operation in
+ * SecurityDBStats.SAMPLE_INTERVAL. Probe histograms are indexed by the
+ * number of slots a successful lookup inspects, with the last bucket
+ * counting every longer probe. Latency histogram bucket i counts lookups
+ * that took from 2^(i-1) up to 2^i nanoseconds.
+ */
+public interface SecurityDBStatsMXBean {
+
+    /** Lookups through get(), getAll() and contains() */
+    long getLookups();
+
+    /** Lookups that found the passport */
+    long getLookupHits();
+
+    /** Lookups the Bloom filter answered without probing the table */
+    long getBloomRejections();
+
+    /** Passengers added */
+    long getInserts();
+
+    /** Adds rejected because the passport was on record under the same name */
+    long getDuplicateRejections();
+
+    /** Adds rejected because the passport was on record under another name */
+    long getConflictingNameRejections();
+
+    /** Adds rejected because the table could not grow any further */
+    long getFullRejections();
+
+    /** Passengers removed */
+    long getRemovals();
+
+    /** Times the table grew */
+    long getResizes();
+
+    /** Total time spent growing the table, in nanoseconds */
+    long getResizeTimeNanos();
+
+    /** Longest single growth of the table, in nanoseconds */
+    long getMaxResizeNanos();
+
+    /** Passengers currently stored */
+    int getPassengerCount();
+
+    /** Buckets currently allocated, including the empty ones */
+    int getTableSize();
+
+    /** Ratio of passengers to buckets */
+    double getLoadFactor();
+
+    /** Sampled probe lengths of successful lookups */
+    long[] getLookupProbeHistogram();
+
+    /** Sampled probe lengths of new passengers just after they were added */
+    long[] getInsertProbeHistogram();
+
+    /** Mean of the sampled lookup probe lengths, or 0 if none were sampled */
+    double getMeanLookupProbeLength();
+
+    /** Sampled get() latencies, in power-of-two nanosecond buckets */
+    long[] getLookupLatencyHistogram();
+
+    /** Upper bound of the latency bucket holding the 99th percentile sample */
+    long getLookupLatencyP99Nanos();
+
+    /** Zeroes every counter and histogram */
+    void reset();
+}
@@ -0,0 +1,408 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Security database with one sub-table per plane, so a departed flight can
+ * be dropped in constant time instead of removing its passengers one by
+ * one.
+ *
+ * Each plane's passengers live in their own SecHashTable (a shard) behind
+ * their own read/write lock, so flights boarding at the same time do not
+ * contend. A global routing index maps each passport to its shard and to
+ * the shard's generation at the time the passenger was added. Departing a
+ * flight bumps the shard's generation and releases its table; routes that
+ * still point at an old generation are treated as absent and are swept from
+ * the index once they outnumber the live ones.
+ *
+ * Passengers added through the plain SecurityDBBase methods, without a
+ * plane, go to an extra shard that is never departed.
+ */
+public class ShardedSecurityDB extends SecurityDBBase implements PassengerSource {
+
+    /* Stale routes tolerated before the routing index is swept */
+    private static final int MIN_SWEEP = 1024;
+
+    /* Plane index of passengers that were added without a plane */
+    private final int unassignedPlane;
+
+    private final PassportHash hashStrategy;
+    private final double loadFactor;
+    private final SuspiciousPassengerListener suspiciousListener;
+    private final Shard[] shards;
+    private final ConcurrentHashMap<String, Route> routes;
+    private final AtomicInteger passengerCount = new AtomicInteger();
+    private final AtomicInteger staleRoutes = new AtomicInteger();
+
+    /**
+     * Creates an empty sharded database with the default options.
+     *
+     * @param numPlanes             number of planes per day
+     * @param numPassengersPerPlane number of passengers per plane
+     */
+    public ShardedSecurityDB(int numPlanes, int numPassengersPerPlane) {
+        this(numPlanes, numPassengersPerPlane, new SecurityDBConfig());
+    }
+
+    /**
+     * Creates an empty sharded database using the load factor, passport hash
+     * and suspicious-passenger listener of the given config.
+     *
+     * @param numPlanes             number of planes per day
+     * @param numPassengersPerPlane number of passengers per plane
+     * @param config                table tuning options
+     */
+    public ShardedSecurityDB(int numPlanes, int numPassengersPerPlane, SecurityDBConfig config) {
+        super(numPlanes, numPassengersPerPlane);
+        SecHashTable.checkLoadFactor(config.getLoadFactor());
+        this.hashStrategy = config.getHashStrategy();
+        this.loadFactor = config.getLoadFactor();
+        this.suspiciousListener = config.getSuspiciousPassengerListener() != null
+                ? config.getSuspiciousPassengerListener()
+                : new SuspiciousPassengerQueue();
+        this.unassignedPlane = numPlanes;
+        this.shards = new Shard[numPlanes + 1];
+        for (int i = 0; i < this.shards.length; i++) {
+            this.shards[i] = new Shard(i);
+        }
+        this.routes = new ConcurrentHashMap<>(Math.max(numPlanes * numPassengersPerPlane, 16));
+    }
+
+    /**
+     * Returns the plane index of passengers that were added without a
+     * plane, which is one past the last real plane.
+     *
+     * @return plane index of unassigned passengers
+     */
+    public int getUnassignedPlane() {
+        return this.unassignedPlane;
+    }
+
+    @Override
+    public int calculateHashCode(String key) {
+        return this.hashStrategy.hash(key);
+    }
+
+    @Override
+    public int size() {
+        int total = 0;
+        for (Shard shard : this.shards) {
+            total += shard.size();
+        }
+        return total;
+    }
+
+    @Override
+    public String get(String passportId) {
+        Route route = this.routes.get(passportId);
+        if (route == null) {
+            return null;
+        }
+        return route.shard.getName(route, passportId, calculateHashCode(passportId));
+    }
+
+    @Override
+    public boolean remove(String passportId) {
+        Route route = this.routes.get(passportId);
+        if (route == null) {
+            return false;
+        }
+        boolean removed = route.shard.remove(route, passportId, calculateHashCode(passportId));
+        this.routes.remove(passportId, route);
+        if (removed) {
+            this.passengerCount.decrementAndGet();
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean addPassenger(String name, String passportId) {
+        return tryAddPassenger(this.unassignedPlane, name, passportId) == AddResult.INSERTED;
+    }
+
+    /**
+     * Adds a passenger to the given plane.
+     *
+     * @param plane      plane index, from 0 to getNumPlanes() - 1
+     * @param name       passenger's full name
+     * @param passportId passenger's passport ID
+     * @return true if the passenger was added successfully, false otherwise
+     * @throws IllegalArgumentException if there is no such plane
+     */
+    public boolean addPassenger(int plane, String name, String passportId) {
+        return tryAddPassenger(plane, name, passportId) == AddResult.INSERTED;
+    }
+
+    /**
+     * Adds a passenger to the given plane and reports the outcome. A passport
+     * already on record, on any plane, is not added again; if it is on record
+     * under another name the suspicious-passenger listener is told.
+     *
+     * @param plane      plane index, from 0 to getNumPlanes() - 1, or
+     *                   getUnassignedPlane()
+     * @param name       passenger's full name
+     * @param passportId passenger's passport ID
+     * @return INSERTED, DUPLICATE, CONFLICTING_NAME, or FULL if the plane's
+     * table cannot grow
+     * @throws IllegalArgumentException if there is no such plane
+     */
+    public AddResult tryAddPassenger(int plane, String name, String passportId) {
+        Shard shard = shard(plane);
+        int hashCode = calculateHashCode(passportId);
+        AddResult result = shard.add(name, passportId, hashCode);
+        if (result == AddResult.INSERTED) {
+            this.passengerCount.incrementAndGet();
+            sweepIfStale();
+            return result;
+        } else if (result == AddResult.FULL) {
+            return result;
+        }
+        String existingName = get(passportId);
+        if (existingName == null || existingName.equals(name)) {
+            return AddResult.DUPLICATE;
+        }
+        this.suspiciousListener.onSuspiciousPassenger(passportId, existingName, name);
+        return AddResult.CONFLICTING_NAME;
+    }
+
+    /**
+     * Drops every passenger of a departed flight in constant time. The
+     * plane's shard starts a new generation and can be boarded again.
+     *
+     * @param plane plane index, from 0 to getNumPlanes() - 1
+     * @return number of passengers released
+     * @throws IllegalArgumentException if there is no such plane
+     */
+    public int departFlight(int plane) {
+        if (plane == this.unassignedPlane) {
+            throw new IllegalArgumentException("Unassigned passengers have no flight");
+        }
+        int released = shard(plane).release();
+        this.passengerCount.addAndGet(-released);
+        this.staleRoutes.addAndGet(released);
+        return released;
+    }
+
+    /**
+     * Returns the plane a passenger is booked on.
+     *
+     * @param passportId passenger's passport ID
+     * @return plane index, getUnassignedPlane(), or -1 if the passenger is
+     * not in the system
+     */
+    public int getPlane(String passportId) {
+        Route route = this.routes.get(passportId);
+        return route != null && route.isLive() ? route.shard.plane : -1;
+    }
+
+    /**
+     * Returns the number of passengers currently booked on a plane.
+     *
+     * @param plane plane index, from 0 to getNumPlanes() - 1, or
+     *              getUnassignedPlane()
+     * @return passengers on the plane
+     * @throws IllegalArgumentException if there is no such plane
+     */
+    public int countOnPlane(int plane) {
+        return shard(plane).count();
+    }
+
+    private Shard shard(int plane) {
+        if (plane < 0 || plane >= this.shards.length) {
+            throw new IllegalArgumentException("No such plane: " + plane);
+        }
+        return this.shards[plane];
+    }
+
+    @Override
+    public int count() {
+        return this.passengerCount.get();
+    }
+
+    /**
+     * Returns the bucket index of the passenger, numbering the buckets of
+     * all shards consecutively in plane order.
+     *
+     * @param passportId passenger's passport ID
+     * @return bucket index of passenger in hashtable
+     */
+    @Override
+    public int getIndex(String passportId) {
+        Route route = this.routes.get(passportId);
+        if (route == null) {
+            return SecHashTable.NOT_FOUND;
+        }
+        int index = route.shard.indexOf(route, passportId, calculateHashCode(passportId));
+        if (index == SecHashTable.NOT_FOUND) {
+            return index;
+        }
+        for (int i = 0; i < route.shard.plane; i++) {
+            index += this.shards[i].size();
+        }
+        return index;
+    }
+
+    /**
+     * Passes every passenger to the action, plane by plane, holding each
+     * shard's read lock while its passengers are passed. The plane a
+     * passenger is booked on is not passed.
+     *
+     * @param action receives each passport ID and the name on record
+     */
+    @Override
+    public void forEachPassenger(BiConsumer<? super String, ? super String> action) {
+        for (Shard shard : this.shards) {
+            shard.forEachPassenger(action);
+        }
+    }
+
+    /* Drops routes to departed generations once they outnumber live routes */
+    private void sweepIfStale() {
+        int stale = this.staleRoutes.get();
+        if (stale > MIN_SWEEP && stale > this.passengerCount.get()
+                && this.staleRoutes.compareAndSet(stale, 0)) {
+            this.routes.values().removeIf(route -> !route.isLive());
+        }
+    }
+
+    /**
+     * Where a passport was booked: its shard and the shard's generation at
+     * the time. The route is dead once the shard moves to a new generation.
+     */
+    private static final class Route {
+        final Shard shard;
+        final int generation;
+
+        Route(Shard shard, int generation) {
+            this.shard = shard;
+            this.generation = generation;
+        }
+
+        boolean isLive() {
+            return this.shard.generation == this.generation;
+        }
+    }
+
+    /**
+     * One plane's passengers. The table is created on first use after each
+     * departure, so releasing a shard never walks its entries.
+     */
+    private final class Shard {
+        final int plane;
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        volatile int generation;
+        /* Guarded by lock; null until the first passenger of a generation */
+        private SecHashTable table;
+
+        Shard(int plane) {
+            this.plane = plane;
+        }
+
+        /**
+         * Claims the route for the passport and stores the passenger, or
+         * returns DUPLICATE if a live route already exists on any plane.
+         * Holding the shard's write lock keeps the generation fixed while
+         * the route is published.
+         */
+        AddResult add(String name, String passportId, int hashCode) {
+            this.lock.writeLock().lock();
+            try {
+                Route fresh = new Route(this, this.generation);
+                Route route = routes.compute(passportId,
+                        (id, existing) -> existing != null && existing.isLive() ? existing : fresh);
+                if (route != fresh) {
+                    return AddResult.DUPLICATE;
+                }
+                if (this.table == null) {
+                    this.table = new SecHashTable(getNumPassengersPerPlane(), loadFactor);
+                }
+                AddResult result = this.table.addPassenger(name, passportId, hashCode);
+                if (result != AddResult.INSERTED) {
+                    routes.remove(passportId, fresh);
+                }
+                return result;
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+        }
+
+        String getName(Route route, String passportId, int hashCode) {
+            this.lock.readLock().lock();
+            try {
+                if (route.generation != this.generation || this.table == null) {
+                    return null;
+                }
+                return this.table.getName(passportId, hashCode);
+            } finally {
+                this.lock.readLock().unlock();
+            }
+        }
+
+        void forEachPassenger(BiConsumer<? super String, ? super String> action) {
+            this.lock.readLock().lock();
+            try {
+                if (this.table != null) {
+                    this.table.forEachPassenger(action);
+                }
+            } finally {
+                this.lock.readLock().unlock();
+            }
+        }
+
+        int indexOf(Route route, String passportId, int hashCode) {
+            this.lock.readLock().lock();
+            try {
+                if (route.generation != this.generation || this.table == null) {
+                    return SecHashTable.NOT_FOUND;
+                }
+                return this.table.getIndex(passportId, hashCode);
+            } finally {
+                this.lock.readLock().unlock();
+            }
+        }
+
+        boolean remove(Route route, String passportId, int hashCode) {
+            this.lock.writeLock().lock();
+            try {
+                if (route.generation != this.generation || this.table == null) {
+                    return false;
+                }
+                return this.table.removePassenger(passportId, hashCode);
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+        }
+
+        /* Starts a new generation and lets go of the old table */
+        int release() {
+            this.lock.writeLock().lock();
+            try {
+                int released = this.table == null ? 0 : this.table.getPassengerCount();
+                this.table = null;
+                this.generation++;
+                return released;
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+        }
+
+        int count() {
+            this.lock.readLock().lock();
+            try {
+                return this.table == null ? 0 : this.table.getPassengerCount();
+            } finally {
+                this.lock.readLock().unlock();
+            }
+        }
+
+        int size() {
+            this.lock.readLock().lock();
+            try {
+                return this.table == null ? 0 : this.table.getSize();
+            } finally {
+                this.lock.readLock().unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * Receives suspicious-passenger events from a security database: attempts
+ * to add a passport that is already in the system under a different name.
+ *
+ * Listeners are called on the thread that attempted the add, outside any
+ * lock held by the database, and should return quickly.
+ */
+public interface SuspiciousPassengerListener {
+
+    /**
+     * Called when a passport is presented with a name other than the one
+     * already on record.
+     *
+     * @param passportId    the passport ID that was presented
+     * @param existingName  the name already on record for the passport
+     * @param attemptedName the name the passport was presented with
+     */
+    void onSuspiciousPassenger(String passportId, String existingName, String attemptedName);
+}
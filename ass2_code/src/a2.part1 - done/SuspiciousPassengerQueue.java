@@ -0,0 +1,112 @@
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread-safe queue of suspicious-passenger events, used by
+ * SecurityDB when no other listener is configured. Recording an event never
+ * blocks: once the queue is full, new events are dropped and counted until
+ * a consumer drains it.
+ */
+public class SuspiciousPassengerQueue implements SuspiciousPassengerListener {
+
+    /** Number of events held when no capacity is given */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final ArrayBlockingQueue<Event> events;
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Creates a queue holding up to DEFAULT_CAPACITY events.
+     */
+    public SuspiciousPassengerQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a queue holding up to the given number of events.
+     *
+     * @param capacity maximum number of undrained events
+     */
+    public SuspiciousPassengerQueue(int capacity) {
+        this.events = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @Override
+    public void onSuspiciousPassenger(String passportId, String existingName,
+                                      String attemptedName) {
+        if (!this.events.offer(new Event(passportId, existingName, attemptedName))) {
+            this.dropped.increment();
+        }
+    }
+
+    /**
+     * Removes and returns the oldest event.
+     *
+     * @return oldest event, or null if there is none
+     */
+    public Event poll() {
+        return this.events.poll();
+    }
+
+    /**
+     * Moves every queued event into the given collection, oldest first.
+     *
+     * @param target collection to add the events to
+     * @return number of events moved
+     */
+    public int drainTo(Collection<? super Event> target) {
+        return this.events.drainTo(target);
+    }
+
+    /**
+     * Returns the number of events waiting to be drained.
+     *
+     * @return queued event count
+     */
+    public int size() {
+        return this.events.size();
+    }
+
+    /**
+     * Returns the number of events lost because the queue was full.
+     *
+     * @return dropped event count
+     */
+    public long getDropped() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * A passport presented under a name other than the one on record.
+     */
+    public static final class Event {
+        private final String passportId;
+        private final String existingName;
+        private final String attemptedName;
+
+        Event(String passportId, String existingName, String attemptedName) {
+            this.passportId = passportId;
+            this.existingName = existingName;
+            this.attemptedName = attemptedName;
+        }
+
+        public String getPassportId() {
+            return passportId;
+        }
+
+        public String getExistingName() {
+            return existingName;
+        }
+
+        public String getAttemptedName() {
+            return attemptedName;
+        }
+
+        @Override
+        public String toString() {
+            return "Suspicious{passport=" + passportId + ", onRecord=" + existingName
+                    + ", presented=" + attemptedName + "}";
+        }
+    }
+}
@@ -1,4 +1,5 @@
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.stream.Collectors;
 
 public class Airport extends AirportBase {
@@ -137,6 +138,28 @@ public class Airport extends AirportBase {
         return this.airportGraph.shortestShuttles(origin,destination);
     }
 
+    /**
+     * Turns on landmark-based A* search (ALT) for findFastestPath, or off
+     * with 0 landmarks. Landmark terminals are picked far apart, and the
+     * fastest times from and to each of them are precomputed, which costs
+     * two full searches per landmark. Those times give lower bounds on the
+     * time between any two terminals, which steer the search towards the
+     * destination.
+     *
+     * The precomputed times are only valid for the graph they were computed
+     * on, so any insert or remove marks them stale, and the next fastest
+     * path query computes them afresh. Suited to airports that are queried
+     * far more often than they change, and laid out so that routes run
+     * roughly in one direction, as on a map; where every terminal is a few
+     * shuttles from every other, the bounds are weak and the default
+     * bidirectional search is faster.
+     *
+     * @param landmarks number of landmark terminals, at least 0
+     */
+    public void useLandmarks(int landmarks) {
+        this.airportGraph.useLandmarks(landmarks);
+    }
+
     /* Implement all the necessary methods of the Airport here */
 
     static class Terminal extends TerminalBase {
@@ -146,45 +169,11 @@ public class Airport extends AirportBase {
          *
          * @param id          terminal ID
          * @param waitingTime waiting time for the terminal, in minutes
-         * @param check
-         * @param distance
-         * @param father
          */
-
-        private int check;
-        private int distance;
-        private TerminalBase father;
-
         public Terminal(String id, int waitingTime) {
             super(id, waitingTime);
-            this.check = 0;
-            this.distance = Integer.MAX_VALUE;
-            this.father = null;
         }
         /* Implement all the necessary methods of the Terminal here */
-        public int getCheck () {
-            return this.check;
-        }
-
-        public int getDistance (){
-            return this.distance;
-        }
-
-        public TerminalBase getFather () {
-            return this.father;
-        }
-
-        public void setCheck (int i) {
-            this.check = i;
-        }
-
-        public void setDistance (int i) {
-            this.distance = i;
-        }
-
-        public void setFather (TerminalBase i) {
-            this.father = i;
-        }
     }
 
     static class Shuttle extends ShuttleBase {
@@ -196,25 +185,8 @@ public class Airport extends AirportBase {
          * @param destination destination terminal
          * @param time        time required to travel, in minutes
          */
-
-        private int capacity;
-        private boolean check;
         public Shuttle(TerminalBase origin, TerminalBase destination, int time) {
             super(origin, destination, time);
-            this.capacity = 0;
-            this.check = false;
-        }
-        public void setCapacity (int i) {
-            this.capacity = i;
-        }
-        public void setCheck (boolean t) {
-            this.check = t;
-        }
-        public int getCapacity() {
-            return this.capacity;
-        }
-        public boolean getCheck() {
-            return this.check;
         }
         /* Implement all the necessary methods of the Shuttle here */
     }
@@ -228,6 +200,9 @@ public class Airport extends AirportBase {
 
         Note: to enable assertions, you need to add the "-ea" flag to the
         VM options of Airport's run configuration
+
+        For randomised checks of the path queries against a reference, and
+        under concurrent mutation, run AirportCheck instead
      */
 //    public static void main(String[] args) {
 //        Airport a = new Airport(3);
@@ -275,249 +250,820 @@ public class Airport extends AirportBase {
 
 }
 
+/**
+ * Directed shuttle graph behind Airport, stored on dense integer IDs.
+ *
+ * Terminals and shuttles are numbered from 0 in insertion order, with hash
+ * maps from the objects to their IDs. Removing one moves the last terminal
+ * or shuttle into the freed ID, so the numbering stays dense. Each terminal
+ * keeps growable int lists of the shuttles leaving and entering it, which
+ * is what mutations update.
+ *
+ * Searches read a compressed sparse row (CSR) copy of the outgoing and
+ * incoming lists instead: the shuttles leaving terminal t are edges
+ * offsets[t] up to offsets[t + 1] of the edge arrays, so a search walks
+ * contiguous primitive arrays. The copy is immutable and rebuilt by the
+ * first search after a mutation. Path queries search from both ends at
+ * once, forward from the origin and backward from the destination.
+ *
+ * Searches keep their state in a SearchScratch taken from a pool rather
+ * than in the graph or the terminals, and never modify the graph, so any
+ * number of path queries may run at once. Mutations and the snapshot
+ * handover are synchronized, and a query sees the graph as it was when
+ * the query started.
+ *
+ * With landmarks enabled, fastest paths are found with A* instead, using
+ * lower bounds from precomputed times to and from the landmarks. They are
+ * kept on the snapshot, so a mutation drops them along with it.
+ *
+ * The time of a path is the waiting time at every terminal it leaves plus
+ * the time of every shuttle it takes, so waiting at the destination is not
+ * counted.
+ */
 class airportGraph {
-    private List<Map<AirportBase.TerminalBase, AirportBase.ShuttleBase>> graphList;
-    private List<AirportBase.TerminalBase> terminals;
-    private List<AirportBase.ShuttleBase> shuttles;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int UNREACHED = -1;
+
+    private final Map<AirportBase.TerminalBase, Integer> terminalIds = new HashMap<>();
+    private AirportBase.TerminalBase[] terminals = new AirportBase.TerminalBase[INITIAL_CAPACITY];
+    private int terminalCount;
+    /* Shuttle IDs leaving and entering each terminal, in the first outDegree/inDegree entries */
+    private int[][] outgoing = new int[INITIAL_CAPACITY][];
+    private int[] outDegree = new int[INITIAL_CAPACITY];
+    private int[][] incoming = new int[INITIAL_CAPACITY][];
+    private int[] inDegree = new int[INITIAL_CAPACITY];
+
+    private final Map<AirportBase.ShuttleBase, Integer> shuttleIds = new HashMap<>();
+    private AirportBase.ShuttleBase[] shuttles = new AirportBase.ShuttleBase[INITIAL_CAPACITY];
+    private int[] shuttleOrigin = new int[INITIAL_CAPACITY];
+    private int[] shuttleDestination = new int[INITIAL_CAPACITY];
+    private int shuttleCount;
 
-    airportGraph() {
-        this.graphList = new ArrayList<>();
-        this.terminals = new ArrayList<>();
-        this.shuttles = new ArrayList<>();
+    /* CSR copy of the graph that searches run on; null after a mutation */
+    private Snapshot snapshot;
+    /* Idle search state, reused by later queries on any thread */
+    private final ConcurrentLinkedQueue<SearchScratch> scratchPool = new ConcurrentLinkedQueue<>();
+    /* Landmarks fastest-path queries use for A*, or 0 for bidirectional Dijkstra */
+    private int landmarkCount;
+
+    private int terminalId (AirportBase.TerminalBase terminal) {
+        Integer id = this.terminalIds.get(terminal);
+        return id == null ? UNREACHED : id;
     }
 
-    private Map<AirportBase.TerminalBase, AirportBase.ShuttleBase> terminalInfo (AirportBase.TerminalBase terminal) {
-        if (!this.terminals.contains(terminal)) {
+    public synchronized AirportBase.TerminalBase opposite (AirportBase.ShuttleBase shuttle, AirportBase.TerminalBase terminal) {
+        if (!this.shuttleIds.containsKey(shuttle) || !this.terminalIds.containsKey(terminal)) {
             return null;
+        } else if (terminal.equals(shuttle.getOrigin())) {
+            return shuttle.getDestination();
+        } else if (terminal.equals(shuttle.getDestination())) {
+            return shuttle.getOrigin();
         } else {
-            int index = this.terminals.indexOf(terminal);
-            return this.graphList.get(index);
+            return null;
         }
     }
 
-    public AirportBase.TerminalBase opposite (AirportBase.ShuttleBase shuttle, AirportBase.TerminalBase terminal) {
-        if (!this.shuttles.contains(shuttle) || !this.terminals.contains(terminal) ) {
+    public synchronized List<AirportBase.ShuttleBase> outgoingShuttles(AirportBase.TerminalBase terminal) {
+        int id = terminalId(terminal);
+        if (id == UNREACHED) {
             return null;
-        } else {
-            AirportBase.TerminalBase start = shuttle.getOrigin();
-            AirportBase.TerminalBase end = shuttle.getDestination();
-            if (terminal.equals(start)) {
-                return end;
-            } else if (terminal.equals(end)) {
-                return start;
-            } else {
-                return null;
-            }
         }
+        List<AirportBase.ShuttleBase> result = new ArrayList<>(this.outDegree[id]);
+        for (int i = 0; i < this.outDegree[id]; i++) {
+            result.add(this.shuttles[this.outgoing[id][i]]);
+        }
+        return result;
     }
 
-    public List<AirportBase.ShuttleBase> outgoingShuttles(AirportBase.TerminalBase terminal) {
-        if (!this.terminals.contains(terminal)) {
-            return null;
-        } else {
-            List<AirportBase.ShuttleBase> result = new ArrayList<>();
-            Map<AirportBase.TerminalBase, AirportBase.ShuttleBase> info = terminalInfo(terminal);
-            if (info != null) {
-                for (Map.Entry<AirportBase.TerminalBase, AirportBase.ShuttleBase> entry: info.entrySet()) {
-                    result.add(entry.getValue());
-                }
-                return result;
-            } else {
-                return null;
-            }
-
+    public synchronized void addTerminal (AirportBase.TerminalBase terminal) {
+        if (this.terminalIds.containsKey(terminal)) {
+            return;
+        }
+        if (this.terminalCount == this.terminals.length) {
+            int capacity = this.terminalCount * 2;
+            this.terminals = Arrays.copyOf(this.terminals, capacity);
+            this.outgoing = Arrays.copyOf(this.outgoing, capacity);
+            this.outDegree = Arrays.copyOf(this.outDegree, capacity);
+            this.incoming = Arrays.copyOf(this.incoming, capacity);
+            this.inDegree = Arrays.copyOf(this.inDegree, capacity);
         }
+        int id = this.terminalCount++;
+        this.terminals[id] = terminal;
+        this.outgoing[id] = new int[2];
+        this.incoming[id] = new int[2];
+        this.terminalIds.put(terminal, id);
+        this.snapshot = null;
     }
 
-    public void addTerminal (AirportBase.TerminalBase terminal) {
-        this.terminals.add(terminal);
-        int index = this.terminals.indexOf(terminal);
-        Map<AirportBase.TerminalBase, AirportBase.ShuttleBase> terminalShuttleMap = new HashMap<>();
-        this.graphList.add(index, terminalShuttleMap);
+    public synchronized void addShuttle (AirportBase.ShuttleBase shuttle) {
+        int origin = terminalId(shuttle.getOrigin());
+        int destination = terminalId(shuttle.getDestination());
+        if (origin == UNREACHED || destination == UNREACHED) {
+            throw new IllegalArgumentException("Shuttle terminals must be in the airport: " + shuttle);
+        }
+        if (this.shuttleIds.containsKey(shuttle)) {
+            return;
+        }
+        if (this.shuttleCount == this.shuttles.length) {
+            int capacity = this.shuttleCount * 2;
+            this.shuttles = Arrays.copyOf(this.shuttles, capacity);
+            this.shuttleOrigin = Arrays.copyOf(this.shuttleOrigin, capacity);
+            this.shuttleDestination = Arrays.copyOf(this.shuttleDestination, capacity);
+        }
+        int id = this.shuttleCount++;
+        this.shuttles[id] = shuttle;
+        this.shuttleOrigin[id] = origin;
+        this.shuttleDestination[id] = destination;
+        this.shuttleIds.put(shuttle, id);
+        this.outgoing[origin] = append(this.outgoing[origin], this.outDegree[origin]++, id);
+        this.incoming[destination] = append(this.incoming[destination], this.inDegree[destination]++, id);
+        this.snapshot = null;
     }
 
-    public void addShuttle (AirportBase.ShuttleBase shuttle) {
-        this.shuttles.add(shuttle);
-        AirportBase.TerminalBase start = shuttle.getOrigin();
-        AirportBase.TerminalBase end = shuttle.getDestination();
-        this.graphList.get(this.terminals.indexOf(start)).put(end, shuttle);
-//        this.graphList.get(this.terminals.indexOf(end)).put(start, shuttle);
+    public synchronized Boolean removeTerminal (AirportBase.TerminalBase terminal) {
+        int id = terminalId(terminal);
+        if (id == UNREACHED) {
+            return false;
+        }
+        while (this.outDegree[id] > 0) {
+            removeShuttle(this.outgoing[id][this.outDegree[id] - 1]);
+        }
+        while (this.inDegree[id] > 0) {
+            removeShuttle(this.incoming[id][this.inDegree[id] - 1]);
+        }
+        this.terminalIds.remove(terminal);
+        int last = --this.terminalCount;
+        if (id != last) {
+            this.terminals[id] = this.terminals[last];
+            this.outgoing[id] = this.outgoing[last];
+            this.outDegree[id] = this.outDegree[last];
+            this.incoming[id] = this.incoming[last];
+            this.inDegree[id] = this.inDegree[last];
+            this.terminalIds.put(this.terminals[id], id);
+            for (int i = 0; i < this.outDegree[id]; i++) {
+                this.shuttleOrigin[this.outgoing[id][i]] = id;
+            }
+            for (int i = 0; i < this.inDegree[id]; i++) {
+                this.shuttleDestination[this.incoming[id][i]] = id;
+            }
+        }
+        this.terminals[last] = null;
+        this.outgoing[last] = null;
+        this.incoming[last] = null;
+        this.outDegree[last] = 0;
+        this.inDegree[last] = 0;
+        this.snapshot = null;
+        return true;
     }
 
-    public Boolean removeTerminal (AirportBase.TerminalBase terminal) {
-        if (!this.terminals.contains(terminal)) {
+    public synchronized boolean removeShuttle (AirportBase.ShuttleBase shuttle) {
+        Integer id = this.shuttleIds.get(shuttle);
+        if (id == null) {
             return false;
-        } else {
-            int index = this.terminals.indexOf(terminal);
-            Map<AirportBase.TerminalBase, AirportBase.ShuttleBase> removalInfo  = this.graphList.get(index);
-
-            this.terminals.remove(index);
-            this.graphList.remove(index);
+        }
+        removeShuttle(id);
+        return true;
+    }
 
-//            List<AirportBase.TerminalBase> terminalBaseRemoval = new ArrayList<>();
-            List<AirportBase.ShuttleBase> shuttleBaseRemoval = new ArrayList<>();
-            for (Map.Entry<AirportBase.TerminalBase, AirportBase.ShuttleBase> entry : removalInfo.entrySet()) {
-//                terminalBaseRemoval.add(entry.getKey());
-                shuttleBaseRemoval.add(entry.getValue());
-            }
+    /* Unlinks a shuttle from both terminals and moves the last shuttle into its ID */
+    private void removeShuttle (int id) {
+        int origin = this.shuttleOrigin[id];
+        int destination = this.shuttleDestination[id];
+        this.outDegree[origin] = delete(this.outgoing[origin], this.outDegree[origin], id);
+        this.inDegree[destination] = delete(this.incoming[destination], this.inDegree[destination], id);
+        this.shuttleIds.remove(this.shuttles[id]);
+        int last = --this.shuttleCount;
+        if (id != last) {
+            this.shuttles[id] = this.shuttles[last];
+            this.shuttleOrigin[id] = this.shuttleOrigin[last];
+            this.shuttleDestination[id] = this.shuttleDestination[last];
+            this.shuttleIds.put(this.shuttles[id], id);
+            replace(this.outgoing[this.shuttleOrigin[id]], this.outDegree[this.shuttleOrigin[id]], last, id);
+            replace(this.incoming[this.shuttleDestination[id]], this.inDegree[this.shuttleDestination[id]],
+                    last, id);
+        }
+        this.shuttles[last] = null;
+        this.snapshot = null;
+    }
 
-//            for (AirportBase.TerminalBase terminalBase : terminalBaseRemoval) {
-//                int indexToRemove = this.terminals.indexOf(terminalBase);
-//                this.graphList.get(indexToRemove).remove(terminalBase);
-//            }
+    private static int[] append (int[] list, int size, int value) {
+        if (size == list.length) {
+            list = Arrays.copyOf(list, Math.max(size * 2, 2));
+        }
+        list[size] = value;
+        return list;
+    }
 
-            for (AirportBase.ShuttleBase shuttleBase : shuttleBaseRemoval) {
-                this.shuttles.remove(shuttleBase);
+    /* Removes one occurrence of value by moving the last entry over it; returns the new size */
+    private static int delete (int[] list, int size, int value) {
+        for (int i = 0; i < size; i++) {
+            if (list[i] == value) {
+                list[i] = list[size - 1];
+                return size - 1;
             }
+        }
+        return size;
+    }
 
-            List<AirportBase.ShuttleBase> endShuttle = new ArrayList<>();
-            for (AirportBase.ShuttleBase shuttle : this.shuttles) {
-                if (shuttle.getDestination().equals(terminal)) {
-                   endShuttle.add(shuttle);
-                }
+    private static void replace (int[] list, int size, int value, int replacement) {
+        for (int i = 0; i < size; i++) {
+            if (list[i] == value) {
+                list[i] = replacement;
+                return;
             }
+        }
+    }
 
-            for (AirportBase.ShuttleBase shuttle : endShuttle) {
-                removeShuttle(shuttle);
+    public synchronized void useLandmarks (int landmarks) {
+        if (landmarks < 0) {
+            throw new IllegalArgumentException("Landmark count must be at least 0: " + landmarks);
+        }
+        this.landmarkCount = landmarks;
+        if (landmarks > 0) {
+            Snapshot graph = snapshot();
+            SearchScratch scratch = acquireScratch(graph);
+            try {
+                graph.landmarks(landmarks, scratch);
+            } finally {
+                this.scratchPool.offer(scratch);
             }
-            return true;
         }
     }
 
-    public boolean removeShuttle (AirportBase.ShuttleBase shuttle) {
-        if (!this.shuttles.contains(shuttle)) {
-            return false;
-        } else {
-            AirportBase.TerminalBase start = shuttle.getOrigin();
-            AirportBase.TerminalBase end = shuttle.getDestination();
+    /* Returns the CSR snapshot of the graph, rebuilding it if the graph changed */
+    private Snapshot snapshot () {
+        if (this.snapshot == null) {
+            this.snapshot = new Snapshot(this);
+        }
+        return this.snapshot;
+    }
 
-            this.shuttles.remove(shuttle);
+    public AirportBase.Path leastShuttles (AirportBase.TerminalBase start, AirportBase.TerminalBase end) {
+        return search(start, end, false);
+    }
 
-            this.graphList.get(this.terminals.indexOf(start)).remove(end);
-//            this.graphList.get(this.terminals.indexOf(end)).remove(start);
+    public AirportBase.Path shortestShuttles (AirportBase.TerminalBase start, AirportBase.TerminalBase end) {
+        return search(start, end, true);
+    }
 
-            return true;
+    /* Runs a bidirectional search between two terminals, by shuttle count or by time */
+    private AirportBase.Path search (AirportBase.TerminalBase start, AirportBase.TerminalBase end, boolean byTime) {
+        Snapshot graph;
+        int origin;
+        int destination;
+        int landmarks;
+        synchronized (this) {
+            graph = snapshot();
+            origin = terminalId(start);
+            destination = terminalId(end);
+            landmarks = this.landmarkCount;
         }
+        if (origin == UNREACHED || destination == UNREACHED) {
+            return null;
+        } else if (origin == destination) {
+            return new AirportBase.Path(new ArrayList<>(List.of(graph.terminals[origin])), 0);
+        } else if (byTime && landmarks > 0) {
+            SearchScratch scratch = acquireScratch(graph);
+            try {
+                Landmarks bounds = graph.landmarks(landmarks, scratch);
+                scratch.begin(graph.terminalCount);
+                return aStar(graph, bounds, scratch, origin, destination)
+                        ? tracePath(graph, scratch, origin, destination) : null;
+            } finally {
+                this.scratchPool.offer(scratch);
+            }
+        }
+        SearchScratch forward = acquireScratch(graph);
+        SearchScratch backward = acquireScratch(graph);
+        try {
+            int meet = byTime
+                    ? bidirectionalDijkstra(graph, forward, backward, origin, destination)
+                    : bidirectionalBFS(graph, forward, backward, origin, destination);
+            return meet == UNREACHED ? null : joinPath(graph, forward, backward, origin, meet, destination);
+        } finally {
+            this.scratchPool.offer(forward);
+            this.scratchPool.offer(backward);
+        }
+    }
 
+    /* Takes idle search state from the pool, or creates it, ready for a search of the graph */
+    private SearchScratch acquireScratch (Snapshot graph) {
+        SearchScratch scratch = this.scratchPool.poll();
+        if (scratch == null) {
+            scratch = new SearchScratch();
+        }
+        scratch.begin(graph.terminalCount);
+        return scratch;
     }
 
+    /*
+     * Breadth-first search from both ends at once: forward along outgoing
+     * shuttles from origin and backward along incoming shuttles from
+     * destination, each round expanding a whole level of whichever frontier
+     * is smaller. The first round that reaches a terminal already reached
+     * by the other side finishes, and the terminal with the fewest shuttles
+     * in total found in that round is returned, or UNREACHED once either
+     * frontier runs dry.
+     */
+    private static int bidirectionalBFS (Snapshot graph, SearchScratch forward, SearchScratch backward,
+                                         int origin, int destination) {
+        forward.reach(origin, 0, UNREACHED);
+        backward.reach(destination, 0, UNREACHED);
+        forward.queue[0] = origin;
+        backward.queue[0] = destination;
+        int forwardHead = 0;
+        int forwardTail = 1;
+        int backwardHead = 0;
+        int backwardTail = 1;
+        while (forwardHead < forwardTail && backwardHead < backwardTail) {
+            int meet = UNREACHED;
+            int best = Integer.MAX_VALUE;
+            if (forwardTail - forwardHead <= backwardTail - backwardHead) {
+                int levelEnd = forwardTail;
+                for (; forwardHead < levelEnd; forwardHead++) {
+                    int examining = forward.queue[forwardHead];
+                    int hops = forward.distance[examining] + 1;
+                    for (int e = graph.offsets[examining]; e < graph.offsets[examining + 1]; e++) {
+                        int t = graph.edgeTargets[e];
+                        if (forward.distance(t) == Integer.MAX_VALUE) {
+                            forward.reach(t, hops, e);
+                            forward.queue[forwardTail++] = t;
+                            int other = backward.distance(t);
+                            if (other != Integer.MAX_VALUE && hops + other < best) {
+                                best = hops + other;
+                                meet = t;
+                            }
+                        }
+                    }
+                }
+            } else {
+                int levelEnd = backwardTail;
+                for (; backwardHead < levelEnd; backwardHead++) {
+                    int examining = backward.queue[backwardHead];
+                    int hops = backward.distance[examining] + 1;
+                    for (int r = graph.reverseOffsets[examining]; r < graph.reverseOffsets[examining + 1]; r++) {
+                        int e = graph.reverseEdges[r];
+                        int t = graph.edgeSources[e];
+                        if (backward.distance(t) == Integer.MAX_VALUE) {
+                            backward.reach(t, hops, e);
+                            backward.queue[backwardTail++] = t;
+                            int other = forward.distance(t);
+                            if (other != Integer.MAX_VALUE && hops + other < best) {
+                                best = hops + other;
+                                meet = t;
+                            }
+                        }
+                    }
+                }
+            }
+            if (meet != UNREACHED) {
+                return meet;
+            }
+        }
+        return UNREACHED;
+    }
 
+    /*
+     * Dijkstra's algorithm from both ends at once: forward from origin
+     * along outgoing shuttles and backward from destination along incoming
+     * ones, each step settling the terminal with the least distance on
+     * either side. An edge costs the same in both directions, namely the
+     * waiting time at the terminal it leaves plus the shuttle's time, so
+     * the waiting time is charged exactly once whichever side settles it.
+     *
+     * best is the shortest origin-destination route seen so far through a
+     * terminal reached by both sides. No route can be shorter than the sum
+     * of the two sides' least queued distances, so the search stops once
+     * that sum reaches best. Returns the terminal best passes through, or
+     * UNREACHED.
+     */
+    private static int bidirectionalDijkstra (Snapshot graph, SearchScratch forward, SearchScratch backward,
+                                              int origin, int destination) {
+        forward.relax(origin, 0, UNREACHED);
+        backward.relax(destination, 0, UNREACHED);
+        long best = Long.MAX_VALUE;
+        int meet = UNREACHED;
+        while (forward.heapSize > 0 && backward.heapSize > 0) {
+            long forwardTop = forward.distance[forward.heap[0]];
+            long backwardTop = backward.distance[backward.heap[0]];
+            if (forwardTop + backwardTop >= best) {
+                break;
+            }
+            if (forwardTop <= backwardTop) {
+                int terminal = forward.pop();
+                int leave = forward.distance[terminal];
+                for (int e = graph.offsets[terminal]; e < graph.offsets[terminal + 1]; e++) {
+                    int t = graph.edgeTargets[e];
+                    if (forward.relax(t, leave + graph.edgeCosts[e], e)) {
+                        int other = backward.distance(t);
+                        if (other != Integer.MAX_VALUE && (long) forward.distance[t] + other < best) {
+                            best = (long) forward.distance[t] + other;
+                            meet = t;
+                        }
+                    }
+                }
+            } else {
+                int terminal = backward.pop();
+                int leave = backward.distance[terminal];
+                for (int r = graph.reverseOffsets[terminal]; r < graph.reverseOffsets[terminal + 1]; r++) {
+                    int e = graph.reverseEdges[r];
+                    int t = graph.edgeSources[e];
+                    if (backward.relax(t, leave + graph.edgeCosts[e], e)) {
+                        int other = forward.distance(t);
+                        if (other != Integer.MAX_VALUE && (long) backward.distance[t] + other < best) {
+                            best = (long) backward.distance[t] + other;
+                            meet = t;
+                        }
+                    }
+                }
+            }
+        }
+        return meet;
+    }
 
-    private void BFS (AirportBase.TerminalBase start) {
-        AirportBase.Path result = new AirportBase.Path(new ArrayList<>(),0);
-        for (AirportBase.TerminalBase t : this.terminals) {
-            ((Airport.Terminal)t).setDistance(Integer.MAX_VALUE);
-            ((Airport.Terminal)t).setCheck(0);
-            ((Airport.Terminal)t).setFather(null);
+    /*
+     * A* search from origin, with the landmark bound added to each
+     * terminal's distance to rank the queue. The bounds are consistent, so
+     * as in Dijkstra's algorithm a settled terminal's distance is final,
+     * and the search stops once destination is settled. Terminals the
+     * bounds show cannot reach destination are never queued. Returns true
+     * if destination was reached.
+     */
+    private static boolean aStar (Snapshot graph, Landmarks bounds, SearchScratch scratch,
+                                  int origin, int destination) {
+        int originBound = bounds.bound(origin, destination);
+        if (originBound == Integer.MAX_VALUE) {
+            return false;
         }
-        ((Airport.Terminal)start).setCheck(1);
-        ((Airport.Terminal)start).setDistance(0);
-        Queue<Airport.Terminal> terminalQueue= new LinkedList<>();
-        terminalQueue.add((Airport.Terminal)start);
-        while (!terminalQueue.isEmpty()) {
-            Airport.Terminal examining = terminalQueue.remove();
-            for (AirportBase.ShuttleBase i : outgoingShuttles (examining)) {
-                Airport.Terminal t = (Airport.Terminal)i.getDestination();
-                if (t.getCheck() == 0) {
-                    t.setCheck(1);
-                    t.setDistance(examining.getDistance() + 1);
-                    t.setFather(examining);
-                    terminalQueue.add(t);
+        scratch.relax(origin, 0, UNREACHED, originBound);
+        while (scratch.heapSize > 0) {
+            int terminal = scratch.pop();
+            if (terminal == destination) {
+                return true;
+            }
+            int leave = scratch.distance[terminal];
+            for (int e = graph.offsets[terminal]; e < graph.offsets[terminal + 1]; e++) {
+                int t = graph.edgeTargets[e];
+                int arrival = leave + graph.edgeCosts[e];
+                if (arrival < scratch.distance(t)) {
+                    int bound = bounds.bound(t, destination);
+                    if (bound != Integer.MAX_VALUE) {
+                        scratch.relax(t, arrival, e, bound);
+                    }
                 }
             }
-            examining.setCheck(2);
         }
+        return false;
     }
 
-    public AirportBase.Path leastShuttles (AirportBase.TerminalBase start, AirportBase.TerminalBase end) {
-        BFS(start);
-        Airport.Terminal t = (Airport.Terminal) end;
-        if (t.getDistance() == Integer.MAX_VALUE) {
-            return null;
-        } else {
-            AirportBase.Path path = new AirportBase.Path(new ArrayList<>(), 0);
-            path.terminals.add(t);
-            path.time += t.getWaitingTime();
-            while (t.getFather() != null){
-                AirportBase.TerminalBase father = t.getFather();
-                Airport.Shuttle shuttle = (Airport.Shuttle)this.graphList.get(this.terminals.indexOf(father)).get(t);
-                shuttle.setCapacity(shuttle.getCapacity() - 1);
-                if (shuttle.getCapacity() == 0) {
-                    removeShuttle(shuttle);
+    /* Builds the path to destination from the parent edges of a one-way search */
+    private static AirportBase.Path tracePath (Snapshot graph, SearchScratch scratch, int origin, int destination) {
+        AirportBase.Path path = new AirportBase.Path(new ArrayList<>(), scratch.distance[destination]);
+        for (int t = destination; t != origin; ) {
+            path.terminals.add(graph.terminals[t]);
+            t = graph.edgeSources[scratch.parentEdge[t]];
+        }
+        path.terminals.add(graph.terminals[origin]);
+        Collections.reverse(path.terminals);
+        return path;
+    }
+
+    /*
+     * Builds the path through meet from the forward search's parent edges
+     * back to origin and the backward search's parent edges on to
+     * destination.
+     */
+    private static AirportBase.Path joinPath (Snapshot graph, SearchScratch forward, SearchScratch backward,
+                                              int origin, int meet, int destination) {
+        AirportBase.Path path = new AirportBase.Path(new ArrayList<>(), 0);
+        for (int t = meet; t != origin; ) {
+            int e = forward.parentEdge[t];
+            t = graph.edgeSources[e];
+            path.terminals.add(graph.terminals[t]);
+            path.time += graph.edgeCosts[e];
+        }
+        Collections.reverse(path.terminals);
+        path.terminals.add(graph.terminals[meet]);
+        for (int t = meet; t != destination; ) {
+            int e = backward.parentEdge[t];
+            t = graph.edgeTargets[e];
+            path.terminals.add(graph.terminals[t]);
+            path.time += graph.edgeCosts[e];
+        }
+        return path;
+    }
+
+    /**
+     * Immutable CSR copy of a graph's shuttles, with the terminal objects by
+     * ID. Edge e runs from edgeSources[e] to edgeTargets[e] and costs
+     * edgeCosts[e], the waiting time at its source plus the shuttle's time.
+     * The edges leaving terminal t are offsets[t] up to offsets[t + 1], and
+     * the edges entering it are listed in reverseEdges from
+     * reverseOffsets[t] up to reverseOffsets[t + 1].
+     */
+    private static final class Snapshot {
+        final int terminalCount;
+        final AirportBase.TerminalBase[] terminals;
+        final int[] offsets;
+        final int[] edgeSources;
+        final int[] edgeTargets;
+        final int[] edgeCosts;
+        final int[] reverseOffsets;
+        final int[] reverseEdges;
+        /* Computed by the first query that asks for them; guarded by this */
+        private Landmarks landmarks;
+
+        Snapshot (airportGraph graph) {
+            this.terminalCount = graph.terminalCount;
+            this.terminals = Arrays.copyOf(graph.terminals, graph.terminalCount);
+            this.offsets = new int[graph.terminalCount + 1];
+            this.edgeSources = new int[graph.shuttleCount];
+            this.edgeTargets = new int[graph.shuttleCount];
+            this.edgeCosts = new int[graph.shuttleCount];
+            this.reverseOffsets = new int[graph.terminalCount + 1];
+            this.reverseEdges = new int[graph.shuttleCount];
+            int edge = 0;
+            for (int t = 0; t < graph.terminalCount; t++) {
+                this.offsets[t] = edge;
+                int wait = graph.terminals[t].getWaitingTime();
+                for (int i = 0; i < graph.outDegree[t]; i++) {
+                    int shuttle = graph.outgoing[t][i];
+                    this.edgeSources[edge] = t;
+                    this.edgeTargets[edge] = graph.shuttleDestination[shuttle];
+                    this.edgeCosts[edge] = wait + graph.shuttles[shuttle].getTime();
+                    edge++;
                 }
-                path.time += shuttle.getTime();
-                t = (Airport.Terminal) father;
-                path.terminals.add(t);
-                path.time += t.getWaitingTime();
             }
-            Collections.reverse(path.terminals);
-            return path;
+            this.offsets[graph.terminalCount] = edge;
+            for (int t = 0; t < graph.terminalCount; t++) {
+                this.reverseOffsets[t + 1] = this.reverseOffsets[t] + graph.inDegree[t];
+            }
+            int[] filled = Arrays.copyOf(this.reverseOffsets, graph.terminalCount);
+            for (int e = 0; e < edge; e++) {
+                this.reverseEdges[filled[this.edgeTargets[e]]++] = e;
+            }
         }
-    }
 
-    private void relax(AirportBase.TerminalBase a, AirportBase.TerminalBase b, int edgeWeight) {
-        if (((Airport.Terminal)b).getDistance() >
-                ((Airport.Terminal)a).getDistance() + edgeWeight + b.getWaitingTime()) {
-            ((Airport.Terminal)b).setDistance(((Airport.Terminal)a).getDistance() + edgeWeight + b.getWaitingTime());
-            ((Airport.Terminal)b).setFather(a);
+        /* Returns this graph's landmarks, computing them if none or a different number were */
+        synchronized Landmarks landmarks (int count, SearchScratch scratch) {
+            if (this.landmarks == null || this.landmarks.count != Math.min(count, this.terminalCount)) {
+                this.landmarks = new Landmarks(this, count, scratch);
+            }
+            return this.landmarks;
         }
     }
 
+    /**
+     * Landmark times for A* (ALT). For landmark L, the triangle inequality
+     * gives d(v, t) >= d(L, t) - d(L, v) and d(v, t) >= d(v, L) - d(t, L), so
+     * the largest of these over all landmarks is a lower bound on the time
+     * from v to t that never overestimates and that drops by at most the
+     * cost of any edge. Times are measured with the same edge costs as the
+     * searches, so terminal waiting times are included.
+     *
+     * Landmarks are picked greedily: each is the terminal farthest, by time
+     * there and back, from the landmarks already picked, and terminals no
+     * landmark connects with count as farthest, so separate parts of the
+     * airport each get one. Times are stored terminal-major, with the
+     * landmarks of terminal v at v * count to v * count + count - 1.
+     */
+    private static final class Landmarks {
+        final int count;
+        /* fromLandmark[v * count + i] is the time from landmark i to v; MAX_VALUE if unreachable */
+        private final int[] fromLandmark;
+        /* toLandmark[v * count + i] is the time from v to landmark i; MAX_VALUE if unreachable */
+        private final int[] toLandmark;
 
-    public void dijkstra(AirportBase.TerminalBase start) {
-        PriorityQueue<Airport.Terminal> terminalQueue= new PriorityQueue<Airport.Terminal>(
-                5, Comparator.comparing(Airport.Terminal::getDistance));
-        for (AirportBase.TerminalBase t : this.terminals) {
-            ((Airport.Terminal)t).setDistance(Integer.MAX_VALUE);
-            ((Airport.Terminal)t).setFather(null);
-            if (t.equals(start)) {
-                ((Airport.Terminal)start).setDistance(start.getWaitingTime());
+        Landmarks (Snapshot graph, int count, SearchScratch scratch) {
+            int terminals = graph.terminalCount;
+            this.count = Math.min(count, terminals);
+            this.fromLandmark = new int[terminals * this.count];
+            this.toLandmark = new int[terminals * this.count];
+            long[] nearest = new long[terminals];
+            Arrays.fill(nearest, Long.MAX_VALUE);
+            int landmark = 0;
+            for (int i = 0; i < this.count; i++) {
+                fill(graph, scratch, landmark, true, this.fromLandmark, i);
+                fill(graph, scratch, landmark, false, this.toLandmark, i);
+                int farthest = 0;
+                for (int v = 0; v < terminals; v++) {
+                    int from = this.fromLandmark[v * this.count + i];
+                    int to = this.toLandmark[v * this.count + i];
+                    long roundTrip = from == Integer.MAX_VALUE || to == Integer.MAX_VALUE
+                            ? Long.MAX_VALUE : (long) from + to;
+                    nearest[v] = Math.min(nearest[v], roundTrip);
+                    if (nearest[v] > nearest[farthest]) {
+                        farthest = v;
+                    }
+                }
+                landmark = farthest;
             }
-            terminalQueue.add((Airport.Terminal)t);
         }
 
-        while (!terminalQueue.isEmpty()) {
-            Airport.Terminal terminal = terminalQueue.poll();
-            Map<AirportBase.TerminalBase, AirportBase.ShuttleBase> slot =
-                    this.graphList.get(this.terminals.indexOf(terminal));
-            if (slot.size()!= 0) {
-                for (Map.Entry<AirportBase.TerminalBase, AirportBase.ShuttleBase> entry : slot.entrySet()) {
-                    relax(terminal, entry.getKey(), entry.getValue().getTime());
+        /* Stores the times from (or to) a landmark in column i of times, by a full Dijkstra search */
+        private void fill (Snapshot graph, SearchScratch scratch, int landmark, boolean forward,
+                           int[] times, int i) {
+            scratch.begin(graph.terminalCount);
+            scratch.relax(landmark, 0, UNREACHED);
+            while (scratch.heapSize > 0) {
+                int terminal = scratch.pop();
+                int leave = scratch.distance[terminal];
+                if (forward) {
+                    for (int e = graph.offsets[terminal]; e < graph.offsets[terminal + 1]; e++) {
+                        scratch.relax(graph.edgeTargets[e], leave + graph.edgeCosts[e], e);
+                    }
+                } else {
+                    for (int r = graph.reverseOffsets[terminal]; r < graph.reverseOffsets[terminal + 1]; r++) {
+                        int e = graph.reverseEdges[r];
+                        scratch.relax(graph.edgeSources[e], leave + graph.edgeCosts[e], e);
+                    }
                 }
             }
+            for (int v = 0; v < graph.terminalCount; v++) {
+                times[v * this.count + i] = scratch.distance(v);
+            }
         }
 
+        /*
+         * Lower bound on the time from v to t, or MAX_VALUE if the landmark
+         * times show v cannot reach t at all: a landmark that reaches v but
+         * not t, or one that t reaches but v does not, rules it out.
+         */
+        int bound (int v, int t) {
+            int bound = 0;
+            int vBase = v * this.count;
+            int tBase = t * this.count;
+            for (int i = 0; i < this.count; i++) {
+                int fromV = this.fromLandmark[vBase + i];
+                if (fromV != Integer.MAX_VALUE) {
+                    int fromT = this.fromLandmark[tBase + i];
+                    if (fromT == Integer.MAX_VALUE) {
+                        return Integer.MAX_VALUE;
+                    }
+                    bound = Math.max(bound, fromT - fromV);
+                }
+                int toT = this.toLandmark[tBase + i];
+                if (toT != Integer.MAX_VALUE) {
+                    int toV = this.toLandmark[vBase + i];
+                    if (toV == Integer.MAX_VALUE) {
+                        return Integer.MAX_VALUE;
+                    }
+                    bound = Math.max(bound, toV - toT);
+                }
+            }
+            return bound;
+        }
     }
 
-    public AirportBase.Path shortestShuttles (AirportBase.TerminalBase start, AirportBase.TerminalBase end) {
-        BFS(start);
-        Airport.Terminal t = (Airport.Terminal) end;
-        if (t.getDistance() == Integer.MAX_VALUE) {
-            return null;
-        } else {
-            dijkstra(start);
+    /**
+     * State of one search, indexed by terminal ID. A terminal's distance,
+     * parent edge and heap position are valid only if its stamp is the
+     * current generation, so starting a search costs O(1) instead of
+     * clearing every terminal.
+     *
+     * Dijkstra's queue is an indexed 4-ary min-heap of terminal IDs keyed
+     * by priority, which is the distance plus, for A*, the terminal's lower
+     * bound on the time still to go. heapIndex records each queued
+     * terminal's position, or SETTLED once it has been popped, which is
+     * what lets decreaseKey move a terminal without searching for it. A
+     * node's four children sit next to each other, and the tree is half as
+     * deep as a binary heap's.
+     */
+    private static final class SearchScratch {
+        static final int SETTLED = -1;
+        private static final int ARITY = 4;
 
-            AirportBase.Path path = new AirportBase.Path(new ArrayList<>(), 0);
-            t.setDistance(t.getDistance() - t.getWaitingTime());
+        int[] stamps = new int[0];
+        int[] distance = new int[0];
+        int[] parentEdge = new int[0];
+        int[] queue = new int[0];
+        int[] heap = new int[0];
+        int[] heapIndex = new int[0];
+        int[] priority = new int[0];
+        int heapSize;
+        int generation;
 
-            path.terminals.add(t);
-            path.time += t.getDistance();
+        /* Forgets the previous search; every terminal becomes unreached */
+        void begin (int terminals) {
+            if (this.stamps.length < terminals) {
+                int capacity = Math.max(terminals, this.stamps.length * 2);
+                this.stamps = new int[capacity];
+                this.distance = new int[capacity];
+                this.parentEdge = new int[capacity];
+                this.queue = new int[capacity];
+                this.heap = new int[capacity];
+                this.heapIndex = new int[capacity];
+                this.priority = new int[capacity];
+                this.generation = 0;
+            }
+            if (this.generation == Integer.MAX_VALUE) {
+                Arrays.fill(this.stamps, 0);
+                this.generation = 0;
+            }
+            this.generation++;
+            this.heapSize = 0;
+        }
 
-            while (t.getFather() != null){
-                AirportBase.TerminalBase father = t.getFather();
-                Airport.Shuttle shuttle = (Airport.Shuttle)this.graphList.get(this.terminals.indexOf(father)).get(t);
+        int distance (int terminal) {
+            return this.stamps[terminal] == this.generation ? this.distance[terminal] : Integer.MAX_VALUE;
+        }
 
-                shuttle.setCapacity(shuttle.getCapacity() - 1);
-                if (shuttle.getCapacity() == 0) {
-                    removeShuttle(shuttle);
-                }
+        void reach (int terminal, int distance, int parentEdge) {
+            this.stamps[terminal] = this.generation;
+            this.distance[terminal] = distance;
+            this.parentEdge[terminal] = parentEdge;
+        }
 
-                t = (Airport.Terminal) father;
-                path.terminals.add(t);
-                path.time += t.getDistance();
+        /*
+         * Offers a route to a terminal for Dijkstra's algorithm, queueing
+         * the terminal or moving it up the heap if the route is shorter
+         * than any before. Returns true if the route was taken.
+         */
+        boolean relax (int terminal, int distance, int parentEdge) {
+            return relax(terminal, distance, parentEdge, 0);
         }
-            Collections.reverse(path.terminals);
-            return path;
+
+        /* As above, ranking the terminal by its distance plus the given lower bound */
+        boolean relax (int terminal, int distance, int parentEdge, int bound) {
+            int current = distance(terminal);
+            if (current == Integer.MAX_VALUE) {
+                reach(terminal, distance, parentEdge);
+                this.priority[terminal] = distance + bound;
+                push(terminal);
+                return true;
+            } else if (distance < current && this.heapIndex[terminal] != SETTLED) {
+                reach(terminal, distance, parentEdge);
+                this.priority[terminal] = distance + bound;
+                decreaseKey(terminal);
+                return true;
+            }
+            return false;
+        }
+
+        /* Queues a reached terminal */
+        void push (int terminal) {
+            this.heap[this.heapSize] = terminal;
+            siftUp(this.heapSize++);
+        }
+
+        /* Restores heap order after a queued terminal's distance dropped */
+        void decreaseKey (int terminal) {
+            siftUp(this.heapIndex[terminal]);
+        }
+
+        /* Removes and returns the queued terminal with the least distance, marking it settled */
+        int pop () {
+            int top = this.heap[0];
+            this.heapIndex[top] = SETTLED;
+            int last = this.heap[--this.heapSize];
+            if (this.heapSize > 0) {
+                this.heap[0] = last;
+                siftDown(0);
+            }
+            return top;
+        }
+
+        private void siftUp (int position) {
+            int terminal = this.heap[position];
+            int key = this.priority[terminal];
+            while (position > 0) {
+                int parent = (position - 1) / ARITY;
+                int above = this.heap[parent];
+                if (this.priority[above] <= key) {
+                    break;
+                }
+                this.heap[position] = above;
+                this.heapIndex[above] = position;
+                position = parent;
+            }
+            this.heap[position] = terminal;
+            this.heapIndex[terminal] = position;
+        }
+
+        private void siftDown (int position) {
+            int terminal = this.heap[position];
+            int key = this.priority[terminal];
+            while (true) {
+                int first = position * ARITY + 1;
+                if (first >= this.heapSize) {
+                    break;
+                }
+                int least = first;
+                for (int child = first + 1; child < Math.min(first + ARITY, this.heapSize); child++) {
+                    if (this.priority[this.heap[child]] < this.priority[this.heap[least]]) {
+                        least = child;
+                    }
+                }
+                int below = this.heap[least];
+                if (this.priority[below] >= key) {
+                    break;
+                }
+                this.heap[position] = below;
+                this.heapIndex[below] = position;
+                position = least;
+            }
+            this.heap[position] = terminal;
+            this.heapIndex[terminal] = position;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,342 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+/**
+ * Command-line correctness checks for Airport's path queries, to be re-run
+ * after changes to the searches, their stopping rules or the landmarks.
+ *
+ * Usage: java AirportCheck &lt;mode&gt; [graphs]
+ *
+ * Modes:
+ *   paths       random small airports under a mix of inserts, removes and
+ *               queries, with every shortest and fastest path compared to a
+ *               Bellman-Ford reference over the live shuttles, once with
+ *               bidirectional search and once with landmarks; outgoing
+ *               shuttles are compared too
+ *   concurrent  path queries on several threads against answers computed
+ *               up front, while another thread inserts and removes a part
+ *               of the airport the queries cannot reach
+ */
+public class AirportCheck {
+
+    /** Seed shared by every run so failures can be reproduced */
+    private static final long SEED = 7505L;
+
+    private static final int QUERY_THREADS = 6;
+
+    public static void main(String[] args) {
+        String mode = args.length > 0 ? args[0] : "paths";
+        int graphs = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        switch (mode) {
+            case "paths":
+                pathCheck(graphs, 0);
+                pathCheck(graphs, 4);
+                break;
+            case "concurrent":
+                concurrentCheck(0);
+                concurrentCheck(4);
+                break;
+            default:
+                System.err.println("Unknown mode: " + mode);
+                System.exit(1);
+        }
+    }
+
+    /**
+     * Builds the given number of random airports of up to 32 terminals,
+     * with parallel shuttles, self-loops and zero waiting times, and runs 40
+     * operations on each. Every operation is followed by a random query.
+     * With landmarks, each airport uses up to that many, so the
+     * mutations keep making them stale.
+     */
+    static void pathCheck(int graphs, int landmarks) {
+        Random random = new Random(SEED + landmarks);
+        long queries = 0;
+        long failures = 0;
+        for (int g = 0; g < graphs; g++) {
+            Airport airport = new Airport(1);
+            if (landmarks > 0) {
+                airport.useLandmarks(1 + random.nextInt(landmarks));
+            }
+            List<AirportBase.TerminalBase> terminals = new ArrayList<>();
+            List<AirportBase.ShuttleBase> shuttles = new ArrayList<>();
+            int count = 2 + random.nextInt(30);
+            for (int i = 0; i < count; i++) {
+                terminals.add(airport.insertTerminal(new Airport.Terminal("T" + i, random.nextInt(5))));
+            }
+            for (int i = 0; i < count * 2; i++) {
+                shuttles.add(airport.insertShuttle(pick(random, terminals), pick(random, terminals),
+                        random.nextInt(20)));
+            }
+            for (int op = 0; op < 40; op++) {
+                failures += mutate(random, airport, terminals, shuttles);
+                AirportBase.TerminalBase origin = pick(random, terminals);
+                AirportBase.TerminalBase destination = pick(random, terminals);
+                failures += checkShortest(airport.findShortestPath(origin, destination),
+                        origin, destination, shuttles);
+                failures += checkFastest(airport.findFastestPath(origin, destination),
+                        origin, destination, shuttles);
+                failures += checkOutgoing(airport, terminals, shuttles);
+                queries++;
+            }
+        }
+        System.out.printf("landmarks=%d graphs=%d queries=%d failures=%d%n",
+                landmarks, graphs, queries, failures);
+        if (failures != 0) {
+            throw new IllegalStateException("Airport path check failed");
+        }
+    }
+
+    /* Removes a terminal, removes a shuttle or inserts one, or does nothing; returns failures */
+    private static int mutate(Random random, Airport airport,
+                              List<AirportBase.TerminalBase> terminals,
+                              List<AirportBase.ShuttleBase> shuttles) {
+        int failures = 0;
+        switch (random.nextInt(10)) {
+            case 0:
+                if (terminals.size() > 2) {
+                    AirportBase.TerminalBase removed = terminals.remove(random.nextInt(terminals.size()));
+                    if (!airport.removeTerminal(removed) || airport.removeTerminal(removed)) {
+                        failures++;
+                    }
+                    shuttles.removeIf(s -> s.getOrigin() == removed || s.getDestination() == removed);
+                }
+                break;
+            case 1:
+                if (!shuttles.isEmpty()
+                        && !airport.removeShuttle(shuttles.remove(random.nextInt(shuttles.size())))) {
+                    failures++;
+                }
+                break;
+            case 2:
+                shuttles.add(airport.insertShuttle(pick(random, terminals), pick(random, terminals),
+                        random.nextInt(20)));
+                break;
+            default:
+                break;
+        }
+        return failures;
+    }
+
+    /* Checks the hop count against the reference and the path against the shuttles */
+    private static int checkShortest(AirportBase.Path path, AirportBase.TerminalBase origin,
+                                     AirportBase.TerminalBase destination,
+                                     List<AirportBase.ShuttleBase> shuttles) {
+        int expected = reference(shuttles, origin, destination, false);
+        if (path == null || expected < 0) {
+            return report(path == null && expected < 0, "shortest", origin, destination, expected, path);
+        }
+        int minimumTime = pathTime(path, shuttles);
+        return report(path.terminals.size() - 1 == expected && endsAt(path, origin, destination)
+                        && minimumTime >= 0 && path.time >= minimumTime,
+                "shortest", origin, destination, expected, path);
+    }
+
+    /* Checks the time against the reference and that the path achieves it */
+    private static int checkFastest(AirportBase.Path path, AirportBase.TerminalBase origin,
+                                    AirportBase.TerminalBase destination,
+                                    List<AirportBase.ShuttleBase> shuttles) {
+        int expected = reference(shuttles, origin, destination, true);
+        if (path == null || expected < 0) {
+            return report(path == null && expected < 0, "fastest", origin, destination, expected, path);
+        }
+        return report(path.time == expected && pathTime(path, shuttles) == expected
+                        && endsAt(path, origin, destination),
+                "fastest", origin, destination, expected, path);
+    }
+
+    private static int checkOutgoing(Airport airport, List<AirportBase.TerminalBase> terminals,
+                                     List<AirportBase.ShuttleBase> shuttles) {
+        int failures = 0;
+        for (AirportBase.TerminalBase terminal : terminals) {
+            HashSet<AirportBase.ShuttleBase> expected = new HashSet<>();
+            for (AirportBase.ShuttleBase shuttle : shuttles) {
+                if (shuttle.getOrigin() == terminal) {
+                    expected.add(shuttle);
+                }
+            }
+            if (!expected.equals(new HashSet<>(airport.outgoingShuttles(terminal)))) {
+                System.out.println("outgoingShuttles(" + terminal.getId() + ") differs");
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    private static int report(boolean passed, String query, AirportBase.TerminalBase origin,
+                              AirportBase.TerminalBase destination, int expected,
+                              AirportBase.Path path) {
+        if (passed) {
+            return 0;
+        }
+        System.out.printf("%s %s -> %s: expected %d, got %s%n", query, origin.getId(),
+                destination.getId(), expected, path);
+        return 1;
+    }
+
+    /*
+     * Bellman-Ford over the live shuttles: the least number of shuttles, or
+     * with byTime the least waiting plus travel time, from origin to
+     * destination; -1 if it cannot be reached.
+     */
+    private static int reference(List<AirportBase.ShuttleBase> shuttles,
+                                 AirportBase.TerminalBase origin,
+                                 AirportBase.TerminalBase destination, boolean byTime) {
+        Map<AirportBase.TerminalBase, Integer> distance = new HashMap<>();
+        distance.put(origin, 0);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (AirportBase.ShuttleBase shuttle : shuttles) {
+                Integer leave = distance.get(shuttle.getOrigin());
+                if (leave == null) {
+                    continue;
+                }
+                int arrive = leave + (byTime
+                        ? shuttle.getOrigin().getWaitingTime() + shuttle.getTime() : 1);
+                Integer known = distance.get(shuttle.getDestination());
+                if (known == null || arrive < known) {
+                    distance.put(shuttle.getDestination(), arrive);
+                    changed = true;
+                }
+            }
+        }
+        return distance.getOrDefault(destination, -1);
+    }
+
+    /* Least time along the path's terminals using the live shuttles, or -1 if a hop has none */
+    private static int pathTime(AirportBase.Path path, List<AirportBase.ShuttleBase> shuttles) {
+        int time = 0;
+        for (int i = 0; i + 1 < path.terminals.size(); i++) {
+            AirportBase.TerminalBase from = path.terminals.get(i);
+            AirportBase.TerminalBase to = path.terminals.get(i + 1);
+            int best = Integer.MAX_VALUE;
+            for (AirportBase.ShuttleBase shuttle : shuttles) {
+                if (shuttle.getOrigin() == from && shuttle.getDestination() == to) {
+                    best = Math.min(best, shuttle.getTime());
+                }
+            }
+            if (best == Integer.MAX_VALUE) {
+                return -1;
+            }
+            time += from.getWaitingTime() + best;
+        }
+        return time;
+    }
+
+    private static boolean endsAt(AirportBase.Path path, AirportBase.TerminalBase origin,
+                                  AirportBase.TerminalBase destination) {
+        return path.terminals.get(0) == origin
+                && path.terminals.get(path.terminals.size() - 1) == destination;
+    }
+
+    /**
+     * Answers 400 random queries on a 3000-terminal airport up front, then
+     * repeats them on QUERY_THREADS threads while another thread grows and
+     * prunes a separate group of terminals. Every answer must match.
+     */
+    static void concurrentCheck(int landmarks) {
+        Random random = new Random(SEED);
+        Airport airport = new Airport(1);
+        airport.useLandmarks(landmarks);
+        int count = 3000;
+        AirportBase.TerminalBase[] terminals = new AirportBase.TerminalBase[count];
+        for (int i = 0; i < count; i++) {
+            terminals[i] = airport.insertTerminal(new Airport.Terminal("T" + i, random.nextInt(5)));
+        }
+        for (int i = 0; i < count * 3; i++) {
+            airport.insertShuttle(terminals[random.nextInt(count)], terminals[random.nextInt(count)],
+                    random.nextInt(20));
+        }
+        int queries = 400;
+        int[] origins = new int[queries];
+        int[] destinations = new int[queries];
+        int[] hops = new int[queries];
+        int[] times = new int[queries];
+        for (int q = 0; q < queries; q++) {
+            origins[q] = random.nextInt(count);
+            destinations[q] = random.nextInt(count);
+            hops[q] = hops(airport.findShortestPath(terminals[origins[q]], terminals[destinations[q]]));
+            times[q] = time(airport.findFastestPath(terminals[origins[q]], terminals[destinations[q]]));
+        }
+        AtomicLong failures = new AtomicLong();
+        runThreads(QUERY_THREADS + 1, t -> {
+            if (t == QUERY_THREADS) {
+                mutateSeparately(airport);
+                return;
+            }
+            for (int round = 0; round < 3; round++) {
+                for (int q = t; q < queries; q += QUERY_THREADS) {
+                    AirportBase.TerminalBase origin = terminals[origins[q]];
+                    AirportBase.TerminalBase destination = terminals[destinations[q]];
+                    if (hops(airport.findShortestPath(origin, destination)) != hops[q]
+                            || time(airport.findFastestPath(origin, destination)) != times[q]) {
+                        failures.incrementAndGet();
+                    }
+                }
+            }
+        });
+        System.out.printf("landmarks=%d threads=%d queries=%d failures=%d%n",
+                landmarks, QUERY_THREADS, queries * 3, failures.get());
+        if (failures.get() != 0) {
+            throw new IllegalStateException("Airport concurrent check failed");
+        }
+    }
+
+    /* Inserts and removes terminals and shuttles that never connect to the queried ones */
+    private static void mutateSeparately(Airport airport) {
+        Random random = new Random(SEED + 1);
+        List<AirportBase.TerminalBase> extra = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            AirportBase.TerminalBase terminal = airport.insertTerminal(new Airport.Terminal("X" + i, 1));
+            extra.add(terminal);
+            if (extra.size() > 1) {
+                airport.insertShuttle(pick(random, extra), terminal, 3);
+            }
+            if (random.nextInt(3) == 0) {
+                airport.removeTerminal(extra.remove(random.nextInt(extra.size())));
+            }
+        }
+    }
+
+    private static int hops(AirportBase.Path path) {
+        return path == null ? -1 : path.terminals.size() - 1;
+    }
+
+    private static int time(AirportBase.Path path) {
+        return path == null ? -1 : path.time;
+    }
+
+    private static AirportBase.TerminalBase pick(Random random, List<AirportBase.TerminalBase> terminals) {
+        return terminals.get(random.nextInt(terminals.size()));
+    }
+
+    private static void runThreads(int threads, IntConsumer body) {
+        Thread[] workers = new Thread[threads];
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            workers[t] = new Thread(() -> body.accept(id), "check-" + t);
+            workers[t].setUncaughtExceptionHandler((thread, e) -> error.compareAndSet(null, e));
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+        if (error.get() != null) {
+            throw new IllegalStateException(error.get());
+        }
+    }
+}